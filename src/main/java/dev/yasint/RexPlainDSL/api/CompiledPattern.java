@@ -0,0 +1,28 @@
+package dev.yasint.RexPlainDSL.api;
+
+/**
+ * A compiled expression that is matched by some engine other than a single
+ * RE2 {@link com.google.re2j.Pattern}, i.e. a set of shards or an
+ * Aho-Corasick automaton. It's immutable and can be shared by threads.
+ */
+public interface CompiledPattern {
+
+    /**
+     * Creates a matcher for the given input.
+     *
+     * @param input text to match
+     * @return matcher
+     */
+    PatternMatcher matcher(CharSequence input);
+
+    /**
+     * Checks whether the whole input is matched.
+     *
+     * @param input text to match
+     * @return true if matched
+     */
+    default boolean matches(final CharSequence input) {
+        return matcher(input).matches();
+    }
+
+}
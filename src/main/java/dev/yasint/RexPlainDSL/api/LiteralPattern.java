@@ -0,0 +1,151 @@
+package dev.yasint.RexPlainDSL.api;
+
+import dev.yasint.RexPlainDSL.complex.AhoCorasick;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A word list that is matched by an {@link AhoCorasick} automaton instead
+ * of RE2. It finds the same matches as the list's alternation would,
+ * optionally between two word boundaries \b(?:...)\b, without compiling
+ * it. Building the automaton takes time linear in the size of the trie.
+ */
+public final class LiteralPattern implements CompiledPattern {
+
+    private final AhoCorasick automaton;
+    private final boolean wholeWords;
+
+    private LiteralPattern(final AhoCorasick automaton, final boolean wholeWords) {
+        this.automaton = automaton;
+        this.wholeWords = wholeWords;
+    }
+
+    /**
+     * Compiles the words of a trie. Like the trie's expression, it finds
+     * the longest word at the leftmost index.
+     *
+     * @param trie       words to find
+     * @param wholeWords whether a match must start and end on a word boundary
+     * @return literal pattern
+     */
+    public static LiteralPattern compile(final TrieExpression trie, final boolean wholeWords) {
+        return new LiteralPattern(AhoCorasick.of(trie), wholeWords);
+    }
+
+    /**
+     * Compiles a word list. With leftmost-first matching the word that
+     * comes first in the list wins, like in an alternation of the words
+     * in that order.
+     *
+     * @param words      words to find
+     * @param kind       which match to report among the ones at the same index
+     * @param wholeWords whether a match must start and end on a word boundary
+     * @return literal pattern
+     */
+    public static LiteralPattern compile(final List<String> words, final AhoCorasick.MatchKind kind,
+                                         final boolean wholeWords) {
+        return new LiteralPattern(AhoCorasick.of(words, kind), wholeWords);
+    }
+
+    @Override
+    public PatternMatcher matcher(final CharSequence input) {
+        return new LiteralMatcher(Objects.requireNonNull(input));
+    }
+
+    @Override
+    public boolean matches(final CharSequence input) {
+        return automaton.matches(Objects.requireNonNull(input), wholeWords);
+    }
+
+    private final class LiteralMatcher implements PatternMatcher {
+
+        private final CharSequence input;
+        private int position = 0; // where the next search starts
+        private int start = -1, end = -1; // current match
+
+        private LiteralMatcher(final CharSequence input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean find() {
+            if (position > input.length()) return noMatch();
+            final long match = automaton.find(input, position, wholeWords);
+            if (match < 0) {
+                position = input.length() + 1;
+                return noMatch();
+            }
+            start = (int) (match >>> 32);
+            end = (int) match;
+            if (end > start) position = end;
+            else if (end < input.length()) position = end + Character.charCount(Character.codePointAt(input, end));
+            else position = end + 1;
+            return true;
+        }
+
+        @Override
+        public boolean find(final int from) {
+            if (from < 0 || from > input.length()) {
+                throw new IndexOutOfBoundsException("start index is out of bounds: " + from);
+            }
+            position = from;
+            return find();
+        }
+
+        @Override
+        public boolean matches() {
+            if (!automaton.matches(input, wholeWords)) return noMatch();
+            start = 0;
+            end = input.length();
+            return true;
+        }
+
+        @Override
+        public int start() {
+            check();
+            return start;
+        }
+
+        @Override
+        public int end() {
+            check();
+            return end;
+        }
+
+        @Override
+        public String group() {
+            check();
+            return input.subSequence(start, end).toString();
+        }
+
+        @Override
+        public String group(final int group) {
+            check();
+            if (group != 0) throw new IndexOutOfBoundsException("Group index out of bounds: " + group);
+            return group();
+        }
+
+        @Override
+        public String group(final String group) {
+            throw new IllegalArgumentException("group '" + group + "' not found"); // words have no groups
+        }
+
+        @Override
+        public int groupCount() {
+            return 0;
+        }
+
+        private boolean noMatch() {
+            start = end = -1;
+            return false;
+        }
+
+        private void check() {
+            if (start < 0) throw new IllegalStateException("no match available");
+        }
+
+    }
+
+}
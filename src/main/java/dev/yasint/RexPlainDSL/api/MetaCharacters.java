@@ -40,5 +40,6 @@ public final class MetaCharacters {
 
     /* Groups */
     public static final String NAMED_CAPTURE_GROUP_PREFIX = "P";
+    public static final String CASE_INSENSITIVE_MODIFIER = "i";
 
 }
@@ -0,0 +1,63 @@
+package dev.yasint.RexPlainDSL.api;
+
+/**
+ * Finds the matches of a {@link CompiledPattern} in one input, the same
+ * way as the RE2 {@link com.google.re2j.Matcher} does. It isn't safe for
+ * use by multiple concurrent threads.
+ */
+public interface PatternMatcher {
+
+    /**
+     * Finds the next match after the previous one. An empty match moves
+     * the search one codepoint ahead.
+     *
+     * @return true if there's another match
+     */
+    boolean find();
+
+    /**
+     * Resets the matcher and finds the first match at or after an index.
+     *
+     * @param from index to start at
+     * @return true if there's a match
+     */
+    boolean find(int from);
+
+    /**
+     * Checks whether the whole input is matched.
+     *
+     * @return true if matched
+     */
+    boolean matches();
+
+    int start();
+
+    int end();
+
+    String group();
+
+    /**
+     * Returns the text of a capture group of the current match, group 0
+     * being the whole match.
+     *
+     * @param group index of the group
+     * @return text of the group, null if it didn't take part in the match
+     */
+    String group(int group);
+
+    /**
+     * Returns the text of a named capture group of the current match.
+     *
+     * @param group name of the group
+     * @return text of the group, null if it didn't take part in the match
+     */
+    String group(String group);
+
+    /**
+     * Returns the number of capture groups in the pattern.
+     *
+     * @return number of capture groups
+     */
+    int groupCount();
+
+}
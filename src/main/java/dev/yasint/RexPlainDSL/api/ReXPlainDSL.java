@@ -2,12 +2,15 @@ package dev.yasint.RexPlainDSL.api;
 
 import com.google.re2j.Matcher;
 import com.google.re2j.Pattern;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import static dev.yasint.RexPlainDSL.api.MetaCharacters.WORD_BOUNDARY;
+
 public final class ReXPlainDSL {
 
     private String expression;
@@ -64,6 +67,39 @@ public final class ReXPlainDSL {
         return Pattern.compile(expression, fl);
     }
 
+    /**
+     * Compiles expressions with the engine that suits them. A word list,
+     * i.e. <code>eitherStr(...)</code> or the same between two
+     * <code>wordBoundary()</code>, is run by an Aho-Corasick automaton
+     * without going through RE2. So is a case folded word list, i.e.
+     * <code>eitherStrCaseFolded(...)</code>, with case folding. Any other
+     * word list with case folding is split into as many RE2 patterns as
+     * its size needs. Anything else is compiled into one RE2 pattern,
+     * its capture groups are read through the matcher.
+     *
+     * @param flags       global modifiers
+     * @param expressions sub-expressions
+     * @return compiled pattern
+     */
+    public static CompiledPattern compilePattern(final Flags[] flags, final Expression... expressions) {
+        boolean foldCase = false;
+        if (flags != null)
+            for (final Flags flag : flags) foldCase |= flag == Flags.CASE_INSENSITIVE;
+        final boolean wholeWords = expressions.length == 3
+                && isWordBoundary(expressions[0]) && isWordBoundary(expressions[2]);
+        final Expression words = expressions.length == 1 ? expressions[0] : wholeWords ? expressions[1] : null;
+        if (words instanceof TrieExpression) {
+            final TrieExpression trie = (TrieExpression) words;
+            if (trie.foldsCase() == foldCase) return LiteralPattern.compile(trie, wholeWords);
+            if (foldCase && !wholeWords) return ShardedPattern.compile(trie, flags);
+        }
+        return ShardedPattern.of(compile(flags, expressions));
+    }
+
+    private static boolean isWordBoundary(final Expression expression) {
+        return WORD_BOUNDARY.contentEquals(expression.toRegex());
+    }
+
     public Pattern patternInstance() {
         if (this.pattern == null)
             throw new NullPointerException("pattern instance is null. invoke compile(Flags...)");
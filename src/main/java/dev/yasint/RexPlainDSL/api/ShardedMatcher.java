@@ -0,0 +1,135 @@
+package dev.yasint.RexPlainDSL.api;
+
+import com.google.re2j.Matcher;
+import com.google.re2j.Pattern;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds matches of a {@link ShardedPattern}. Every shard keeps its next
+ * match, which stays valid until the search moves past its start. So the
+ * input is scanned about once per shard, no matter how many matches are
+ * found. Of the shard matches the one that starts first wins, and the
+ * longest one of those that start there.
+ * <p>
+ * Like the RE2 {@link Matcher} this isn't safe for use by multiple
+ * concurrent threads.
+ */
+public final class ShardedMatcher implements PatternMatcher {
+
+    private static final int SEARCH = -1; // the shard's next match isn't known
+    private static final int EXHAUSTED = Integer.MAX_VALUE; // the shard has no more matches
+
+    private final Matcher[] matchers;
+    private final int[] starts, ends; // next match of each shard
+    private final CharSequence input;
+    private int position = 0; // where the next search starts
+    private int start = -1, end = -1; // current match
+    private int shard = -1; // shard of the current match
+
+    ShardedMatcher(final List<Pattern> shards, final CharSequence input) {
+        this.matchers = new Matcher[shards.size()];
+        for (int i = 0; i < matchers.length; i++) matchers[i] = shards.get(i).matcher(input);
+        this.starts = new int[matchers.length];
+        this.ends = new int[matchers.length];
+        this.input = input;
+        Arrays.fill(starts, SEARCH);
+    }
+
+    @Override
+    public boolean find() {
+        if (position > input.length()) return noMatch();
+        int best = -1;
+        for (int i = 0; i < matchers.length; i++) {
+            if (starts[i] < position) {
+                if (matchers[i].find(position)) {
+                    starts[i] = matchers[i].start();
+                    ends[i] = matchers[i].end();
+                } else {
+                    starts[i] = EXHAUSTED;
+                }
+            }
+            if (starts[i] == EXHAUSTED) continue;
+            if (best < 0 || starts[i] < starts[best] || starts[i] == starts[best] && ends[i] > ends[best]) best = i;
+        }
+        if (best < 0) return noMatch();
+        shard = best; // its matcher still holds the match
+        start = starts[best];
+        end = ends[best];
+        if (end > start) position = end;
+        else if (end < input.length()) position = end + Character.charCount(Character.codePointAt(input, end));
+        else position = end + 1;
+        return true;
+    }
+
+    @Override
+    public boolean find(final int from) {
+        if (from < 0 || from > input.length()) {
+            throw new IndexOutOfBoundsException("start index is out of bounds: " + from);
+        }
+        Arrays.fill(starts, SEARCH);
+        position = from;
+        return find();
+    }
+
+    @Override
+    public boolean matches() {
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i].matches()) {
+                shard = i;
+                start = 0;
+                end = input.length();
+                return true;
+            }
+        }
+        return noMatch();
+    }
+
+    @Override
+    public int start() {
+        check();
+        return start;
+    }
+
+    @Override
+    public int end() {
+        check();
+        return end;
+    }
+
+    @Override
+    public String group() {
+        check();
+        return input.subSequence(start, end).toString();
+    }
+
+    @Override
+    public String group(final int group) {
+        check();
+        return matchers[shard].group(group);
+    }
+
+    @Override
+    public String group(final String group) {
+        check();
+        return matchers[shard].group(group);
+    }
+
+    @Override
+    public int groupCount() {
+        int count = 0;
+        for (final Matcher matcher : matchers) count = Math.max(count, matcher.groupCount());
+        return count;
+    }
+
+    private boolean noMatch() {
+        start = end = shard = -1;
+        return false;
+    }
+
+    private void check() {
+        if (start < 0) throw new IllegalStateException("no match available");
+    }
+
+}
@@ -0,0 +1,90 @@
+package dev.yasint.RexPlainDSL.api;
+
+import com.google.re2j.Pattern;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * A set of RE2 patterns that are used as if they were one alternation.
+ * Very large word lists render into expressions that take seconds to
+ * compile or exceed the engine's limits, so the trie is split into
+ * shards that are compiled one by one and matched together by a
+ * {@link ShardedMatcher}.
+ * <p>
+ * A trie expression matches the longest word at the leftmost position,
+ * and so does the matcher over all the shards. With case insensitive
+ * matching a single pattern may stop at a shorter word that comes first
+ * in the alternation, the sharded one still takes the longest.
+ */
+public final class ShardedPattern implements CompiledPattern {
+
+    /**
+     * Default largest estimated number of instructions of a shard.
+     */
+    public static final int MAX_PROGRAM_SIZE = 1 << 16;
+
+    private final List<Pattern> shards;
+
+    private ShardedPattern(final List<Pattern> shards) {
+        this.shards = Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * Compiles a trie expression into as many patterns as needed for
+     * each one to stay below {@link #MAX_PROGRAM_SIZE}.
+     *
+     * @param trie  words to match
+     * @param flags global modifiers
+     * @return sharded pattern
+     */
+    public static ShardedPattern compile(final TrieExpression trie, final ReXPlainDSL.Flags... flags) {
+        return compile(trie, MAX_PROGRAM_SIZE, false, flags);
+    }
+
+    /**
+     * Compiles a trie expression into as many patterns as needed for
+     * each one to stay below the given program size. The shards can be
+     * compiled in parallel on the common fork-join pool.
+     *
+     * @param trie           words to match
+     * @param maxProgramSize largest estimated number of instructions of a shard
+     * @param parallel       whether to compile the shards in parallel
+     * @param flags          global modifiers
+     * @return sharded pattern
+     */
+    public static ShardedPattern compile(final TrieExpression trie, final int maxProgramSize,
+                                         final boolean parallel, final ReXPlainDSL.Flags... flags) {
+        int fl = 0;
+        for (final ReXPlainDSL.Flags flag : flags) fl += flag.val;
+        final int modifiers = fl;
+        final List<String> expressions = Objects.requireNonNull(trie).toShards(maxProgramSize);
+        return new ShardedPattern((parallel ? expressions.parallelStream() : expressions.stream())
+                .map(expression -> Pattern.compile(expression, modifiers))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Wraps a single RE2 pattern, so it can be used where other engines
+     * are used too.
+     *
+     * @param pattern compiled pattern
+     * @return pattern with one shard
+     */
+    static ShardedPattern of(final Pattern pattern) {
+        return new ShardedPattern(Collections.singletonList(Objects.requireNonNull(pattern)));
+    }
+
+    @Override
+    public ShardedMatcher matcher(final CharSequence input) {
+        return new ShardedMatcher(this.shards, Objects.requireNonNull(input));
+    }
+
+    public List<Pattern> shards() {
+        return shards;
+    }
+
+}
@@ -0,0 +1,280 @@
+package dev.yasint.RexPlainDSL.complex;
+
+import dev.yasint.RexPlainDSL.unicode.UnicodeTables;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Execution :: Aho-Corasick automaton
+ * <p>
+ * Finds the words of a trie in a text without compiling a regular
+ * expression. The states are the trie nodes numbered breadth-first, their
+ * edges are kept in flat arrays: the edges of state s are labels[i] and
+ * targets[i] for offsets[s] <= i < offsets[s + 1], in ascending codepoint
+ * order. A dense table per state would need a row as wide as the alphabet,
+ * which doesn't fit codepoint keyed words, so only the root has one for
+ * ASCII. Every state also has a failure link to the longest proper suffix
+ * that is a state, and an output link to the longest one that ends a word.
+ * <p>
+ * A search reports the match that starts first, and of those the longest
+ * one or the one of the word that comes first in the list, like a regular
+ * expression alternation does. Optionally a match must start and end on
+ * a word boundary, the same one as \b. The automaton is immutable and can
+ * be used by many threads at once.
+ * <p>
+ * The automaton of a trie that folds case folds the text the same way
+ * while it's searched, so it matches like the case insensitive expression.
+ */
+public final class AhoCorasick {
+
+    /**
+     * Which match to report among the ones that start at the same index.
+     */
+    public enum MatchKind {
+        LEFTMOST_LONGEST, // the longest word
+        LEFTMOST_FIRST // the word that comes first in the list
+    }
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int ASCII = 128;
+    private static final int LINEAR_SCAN = 8; // edges searched linearly, more are bisected
+
+    private final MatchKind kind;
+    private final int[] offsets; // state => first edge, one past the last state included
+    private final int[] labels; // edge => codepoint
+    private final int[] targets; // edge => state
+    private final int[] rootAscii = new int[ASCII]; // codepoint => state reached from the root
+    private final int[] fail; // state => longest proper suffix state
+    private final int[] outputs; // state => longest proper suffix state that ends a word
+    private final int[] lengths; // state => chars of the word ending at it, NONE if no word does
+    private final int[] ranks; // state => index of its word in the list, leftmost-first only
+    private final boolean empty; // whether the empty word is included
+    private final int emptyRank;
+    private final int longest; // chars of the longest word
+    private final boolean foldCase; // whether the input is case folded like the words
+
+    private AhoCorasick(final TrieExpression trie, final MatchKind kind, final List<String> words) {
+
+        this.kind = kind;
+        this.foldCase = trie.foldsCase();
+        trie.readLock().lock();
+        try {
+
+            final int states = trie.nodeCount();
+            final int[] nodes = new int[states]; // state => trie node
+            this.offsets = new int[states + 1];
+            this.labels = new int[states - 1];
+            this.targets = new int[states - 1];
+            this.lengths = new int[states];
+            this.empty = trie.isFinal(ROOT);
+
+            // breadth-first, so that the children of a state get consecutive edges
+            int count = 1, edges = 0, longest = 0;
+            final int[] depths = new int[states]; // chars of the path to a state
+            for (int state = 0; state < count; state++) {
+                offsets[state] = edges;
+                lengths[state] = state != ROOT && trie.isFinal(nodes[state]) ? depths[state] : NONE;
+                for (int c = trie.firstChild(nodes[state]); c != 0; c = trie.nextSibling(c)) {
+                    nodes[count] = c;
+                    depths[count] = depths[state] + Character.charCount(trie.key(c));
+                    if (trie.isFinal(c)) longest = Math.max(longest, depths[count]);
+                    labels[edges] = trie.key(c);
+                    targets[edges++] = count++;
+                }
+            }
+            offsets[count] = edges;
+            this.longest = longest;
+
+        } finally {
+            trie.readLock().unlock();
+        }
+
+        Arrays.fill(rootAscii, ROOT);
+        for (int e = offsets[ROOT]; e < offsets[ROOT + 1] && labels[e] < ASCII; e++) rootAscii[labels[e]] = targets[e];
+
+        // failure and output links, breadth-first so that shorter suffixes are done first
+        final int states = lengths.length;
+        this.fail = new int[states];
+        this.outputs = new int[states];
+        outputs[ROOT] = NONE;
+        for (int state = 0; state < states; state++) {
+            for (int e = offsets[state]; e < offsets[state + 1]; e++) {
+                final int target = targets[e];
+                int suffix = ROOT;
+                if (state != ROOT) {
+                    int f = fail[state], next;
+                    while ((next = edge(f, labels[e])) == NONE && f != ROOT) f = fail[f];
+                    suffix = next == NONE ? ROOT : next;
+                }
+                fail[target] = suffix;
+                outputs[target] = lengths[suffix] != NONE ? suffix : outputs[suffix];
+            }
+        }
+
+        if (kind == MatchKind.LEFTMOST_FIRST) {
+            this.ranks = new int[states];
+            Arrays.fill(ranks, Integer.MAX_VALUE);
+            int emptyRank = Integer.MAX_VALUE;
+            for (int rank = words.size() - 1; rank >= 0; rank--) {
+                final String word = words.get(rank);
+                int state = ROOT;
+                for (int i = 0; i < word.length(); ) {
+                    final int codepoint = word.codePointAt(i);
+                    state = edge(state, codepoint);
+                    i += Character.charCount(codepoint);
+                }
+                if (state == ROOT) emptyRank = rank;
+                else ranks[state] = rank;
+            }
+            this.emptyRank = emptyRank;
+        } else {
+            this.ranks = null;
+            this.emptyRank = 0;
+        }
+
+    }
+
+    /**
+     * Builds an automaton of the words of a trie. The words have no order,
+     * so the longest match is reported, like the trie's expression does.
+     *
+     * @param trie words to find
+     * @return automaton
+     */
+    public static AhoCorasick of(final TrieExpression trie) {
+        return new AhoCorasick(Objects.requireNonNull(trie), MatchKind.LEFTMOST_LONGEST, null);
+    }
+
+    /**
+     * Builds an automaton of a word list.
+     *
+     * @param words words to find, in order of preference for leftmost-first
+     * @param kind  which match to report among the ones at the same index
+     * @return automaton
+     */
+    public static AhoCorasick of(final List<String> words, final MatchKind kind) {
+        final TrieExpression trie = new TrieExpression();
+        for (final String word : Objects.requireNonNull(words)) trie.insert(word);
+        return new AhoCorasick(trie, Objects.requireNonNull(kind), words);
+    }
+
+    /**
+     * Finds the first match at or after an index.
+     *
+     * @param input      text to search
+     * @param from       index to start at
+     * @param wholeWords whether a match must start and end on a word boundary
+     * @return start and end of the match packed as start &lt;&lt; 32 | end, -1 if there's none
+     */
+    public long find(final CharSequence input, final int from, final boolean wholeWords) {
+
+        int bestStart = NONE, bestEnd = NONE, bestRank = Integer.MAX_VALUE;
+        if (empty && (!wholeWords || isWordBoundary(input, from))) {
+            bestStart = bestEnd = from;
+            bestRank = emptyRank;
+        }
+
+        int state = ROOT;
+        for (int i = from; i < input.length(); ) {
+            if (bestStart != NONE && i - bestStart >= longest) break; // no longer match can start there
+            final int codepoint = Character.codePointAt(input, i);
+            i += Character.charCount(codepoint);
+            state = transition(state, foldCase ? UnicodeTables.caseFold(codepoint) : codepoint);
+
+            // every word that ends here, longest first
+            for (int s = lengths[state] != NONE ? state : outputs[state]; s != NONE; s = outputs[s]) {
+                final int start = i - lengths[s];
+                if (bestStart != NONE && start > bestStart) break; // the shorter ones start even later
+                if (wholeWords && !(isWordBoundary(input, start) && isWordBoundary(input, i))) continue;
+                final boolean better = bestStart == NONE || start < bestStart || (kind == MatchKind.LEFTMOST_LONGEST
+                        ? i > bestEnd : ranks[s] < bestRank);
+                if (better) {
+                    bestStart = start;
+                    bestEnd = i;
+                    if (ranks != null) bestRank = ranks[s];
+                }
+            }
+            if (bestStart == NONE && empty && (!wholeWords || isWordBoundary(input, i))) {
+                bestStart = bestEnd = i;
+                bestRank = emptyRank;
+            }
+        }
+
+        return bestStart == NONE ? -1 : (long) bestStart << 32 | bestEnd;
+
+    }
+
+    /**
+     * Checks whether the whole input is one of the words.
+     *
+     * @param input      text to match
+     * @param wholeWords whether the input must start and end on a word boundary
+     * @return true if matched
+     */
+    public boolean matches(final CharSequence input, final boolean wholeWords) {
+        int state = ROOT;
+        for (int i = 0; i < input.length() && state != NONE; ) {
+            final int codepoint = Character.codePointAt(input, i);
+            state = edge(state, foldCase ? UnicodeTables.caseFold(codepoint) : codepoint);
+            i += Character.charCount(codepoint);
+        }
+        if (state == NONE || (state == ROOT ? !empty : lengths[state] == NONE)) return false;
+        return !wholeWords || isWordBoundary(input, 0) && isWordBoundary(input, input.length());
+    }
+
+    /**
+     * Follows the failure links until the codepoint can be consumed.
+     */
+    private int transition(int state, final int codepoint) {
+        while (true) {
+            if (state == ROOT) {
+                if (codepoint < ASCII) return rootAscii[codepoint];
+                final int next = edge(ROOT, codepoint);
+                return next == NONE ? ROOT : next;
+            }
+            final int next = edge(state, codepoint);
+            if (next != NONE) return next;
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Returns the state reached from a state through a codepoint.
+     *
+     * @return target state or NONE
+     */
+    private int edge(final int state, final int codepoint) {
+        int low = offsets[state], high = offsets[state + 1] - 1;
+        if (high - low < LINEAR_SCAN) {
+            for (int e = low; e <= high; e++) {
+                if (labels[e] == codepoint) return targets[e];
+                if (labels[e] > codepoint) break;
+            }
+            return NONE;
+        }
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (labels[middle] < codepoint) low = middle + 1;
+            else if (labels[middle] > codepoint) high = middle - 1;
+            else return targets[middle];
+        }
+        return NONE;
+    }
+
+    /**
+     * A word boundary of RE2: only ASCII letters, digits and _ are word chars.
+     */
+    private static boolean isWordBoundary(final CharSequence input, final int index) {
+        final boolean before = index > 0 && isWordChar(input.charAt(index - 1));
+        final boolean after = index < input.length() && isWordChar(input.charAt(index));
+        return before != after;
+    }
+
+    private static boolean isWordChar(final char c) {
+        return c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c == '_';
+    }
+
+}
@@ -0,0 +1,485 @@
+package dev.yasint.RexPlainDSL.complex;
+
+import dev.yasint.RexPlainDSL.api.Expression;
+import dev.yasint.RexPlainDSL.exceptions.GenericException;
+import dev.yasint.RexPlainDSL.util.Common;
+
+import java.util.*;
+
+import static dev.yasint.RexPlainDSL.api.MetaCharacters.*;
+
+/**
+ * Synthesis :: String minimization with shared prefixes and suffixes
+ * <p>
+ * Builds the minimal acyclic automaton (DAWG) of a word list with the
+ * incremental algorithm of Daciuk et al. for sorted input. Words must be
+ * inserted in ascending codepoint order, every state that falls off the
+ * path of the last word is replaced by an equivalent registered state, so
+ * the automaton stays minimal while it grows.
+ * <p>
+ * The rendering factors shared suffixes as well as prefixes. The branches
+ * of a state are written up to its immediate post-dominator, the nearest
+ * state that every path to acceptance passes through, and the rest is
+ * written once after the group. Labels that lead to the same state are
+ * merged into a character class.
+ * i.e. {walking,talking,jumping} => (?:[tw]alk|jump)ing
+ */
+public class DawgExpression implements Expression {
+
+    private static final int[] NO_CODEPOINTS = new int[0];
+    private static final int WALK = 0, ALTERNATIVES = 1, CLOSE = 2, KINDS = 3; // frame kinds
+    private static final int ALTERNATION_GROUP = 4, OPTIONAL_GROUP = 8, OPTIONAL = 16, STARTED = 32; // frame flags
+
+    private final Map<State, State> register = new HashMap<>(); // equivalence classes of finished states
+    private final State root = new State(); // Initial state of the automaton
+    private State[] path = {root}; // path[i] is reached by the first i codepoints of the last word
+    private int[] previous = NO_CODEPOINTS; // Codepoints of the last inserted word
+
+    public DawgExpression() { /*available for testing*/ }
+
+    /**
+     * Inserts one word into the automaton. Words must be inserted in
+     * ascending codepoint order, a word equal to the last one is ignored.
+     *
+     * @param word string input
+     * @throws GenericException if the word is smaller than the last one
+     */
+    public void insert(final String word) {
+
+        final int[] codepoints = word.codePoints().toArray();
+        int prefix = 0;
+        while (prefix < codepoints.length && prefix < previous.length
+                && codepoints[prefix] == previous[prefix]) prefix++;
+        if (prefix == previous.length && prefix == codepoints.length && (prefix > 0 || root.terminal)) {
+            return; // duplicate
+        }
+        if (prefix < previous.length && (prefix == codepoints.length || codepoints[prefix] < previous[prefix])) {
+            throw new GenericException("words must be inserted in ascending codepoint order");
+        }
+
+        // the last word's states below the common prefix can't change anymore
+        for (int depth = previous.length; depth > prefix; depth--) {
+            final State state = path[depth];
+            final State equivalent = register.putIfAbsent(state, state);
+            if (equivalent != null) path[depth - 1].targets[path[depth - 1].size - 1] = equivalent;
+        }
+
+        if (path.length <= codepoints.length) path = Arrays.copyOf(path, codepoints.length + 1);
+        for (int depth = prefix; depth < codepoints.length; depth++) {
+            path[depth + 1] = path[depth].append(codepoints[depth]);
+        }
+        path[codepoints.length].terminal = true; // final state
+        previous = codepoints;
+
+    }
+
+    /**
+     * Inserts a collection of words into the automaton. The words are
+     * sorted by codepoint first, so they can be in any order.
+     *
+     * @param words string inputs
+     */
+    public void insertAll(final Collection<String> words) {
+        final String[] sorted = words.toArray(new String[0]);
+        Arrays.sort(sorted, DawgExpression::compareCodepoints);
+        for (final String word : sorted)
+            insert(word);
+    }
+
+    @Override
+    public StringBuilder toRegex() {
+        final State start = minimalStart();
+        if (start.size == 0) {
+            return new StringBuilder().append(PAREN_OPEN).append(QUESTION_MARK)
+                    .append(COLON).append(PAREN_CLOSE); // nothing or only "" was inserted
+        }
+        return new Renderer(start).render();
+    }
+
+    /**
+     * Returns the start state of the minimal automaton without changing
+     * this one. The states of the last word's path are not registered yet,
+     * they're replaced by probes that point to their registered equivalents
+     * so more words can be inserted after rendering.
+     */
+    private State minimalStart() {
+        State resolved = null;
+        for (int depth = previous.length; depth >= 0; depth--) {
+            final State probe = path[depth].copy();
+            if (resolved != null) probe.targets[probe.size - 1] = resolved;
+            final State equivalent = depth > 0 ? register.get(probe) : null;
+            resolved = equivalent != null ? equivalent : probe;
+        }
+        return resolved;
+    }
+
+    private static int compareCodepoints(final String a, final String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            final int x = a.codePointAt(i), y = b.codePointAt(j);
+            if (x != y) return Integer.compare(x, y);
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    private static final class State {
+
+        private static final State[] NO_TARGETS = new State[0];
+
+        private int[] labels = NO_CODEPOINTS; // Ascending edge codepoints, only the first size are used
+        private State[] targets = NO_TARGETS; // targets[i] is reached through labels[i]
+        private int size = 0; // Number of edges
+        private boolean terminal = false; // Whether a word ends at this state
+
+        /**
+         * Adds an edge with a label larger than all the others and
+         * returns its new target state.
+         */
+        private State append(final int label) {
+            if (size == labels.length) {
+                final int capacity = size < 4 ? size + 1 : size + (size >> 1);
+                labels = Arrays.copyOf(labels, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+            }
+            final State target = new State();
+            labels[size] = label;
+            targets[size++] = target;
+            return target;
+        }
+
+        private State copy() {
+            final State copy = new State();
+            copy.labels = Arrays.copyOf(labels, size);
+            copy.targets = Arrays.copyOf(targets, size);
+            copy.size = size;
+            copy.terminal = terminal;
+            return copy;
+        }
+
+        /**
+         * Two states are equivalent when they're both final or not and
+         * have the same labels leading to the same registered states.
+         */
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            final State other = (State) o;
+            if (terminal != other.terminal || size != other.size) return false;
+            for (int i = 0; i < size; i++) {
+                if (labels[i] != other.labels[i] || targets[i] != other.targets[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = terminal ? 1 : 0;
+            for (int i = 0; i < size; i++) {
+                hash = 31 * (31 * hash + labels[i]) + System.identityHashCode(targets[i]);
+            }
+            return hash;
+        }
+
+    }
+
+    /**
+     * Numbers the states of one rendering, computes their immediate
+     * post-dominators and writes the expression with an explicit stack.
+     */
+    private static final class Renderer {
+
+        private final State[] states; // in post order, successors first
+        private final int end; // the virtual exit that follows every final state
+        private final int[] dominator; // immediate post-dominator of each state
+        private final int[] depth; // depth in the post-dominator tree
+        private final int[] shortest; // length of the shortest word accepted from each state
+        private final int[][] groupTargets; // distinct targets of each state by first label
+        private final int[][][] groupLabels; // labels of each target group
+
+        private Renderer(final State start) {
+
+            // iterative depth first search, a state is numbered after its successors
+            final Map<State, Integer> ids = new IdentityHashMap<>();
+            final List<State> order = new ArrayList<>();
+            final Deque<State> stack = new ArrayDeque<>();
+            final Deque<Integer> cursors = new ArrayDeque<>();
+            stack.push(start);
+            cursors.push(0);
+            ids.put(start, -1);
+            while (!stack.isEmpty()) {
+                final State state = stack.peek();
+                final int cursor = cursors.pop();
+                if (cursor < state.size) {
+                    cursors.push(cursor + 1);
+                    final State target = state.targets[cursor];
+                    if (!ids.containsKey(target)) {
+                        ids.put(target, -1);
+                        stack.push(target);
+                        cursors.push(0);
+                    }
+                } else {
+                    stack.pop();
+                    ids.put(state, order.size());
+                    order.add(state);
+                }
+            }
+
+            this.states = order.toArray(new State[0]);
+            this.end = states.length;
+            this.dominator = new int[end + 1];
+            this.depth = new int[end + 1];
+            this.shortest = new int[end + 1];
+            this.groupTargets = new int[end][];
+            this.groupLabels = new int[end][][];
+            dominator[end] = end;
+
+            for (int s = 0; s < end; s++) {
+                final State state = states[s];
+                final int[] targets = new int[state.size];
+                int dominates = state.terminal ? end : -1;
+                shortest[s] = state.terminal ? 0 : Integer.MAX_VALUE;
+                for (int i = 0; i < state.size; i++) {
+                    targets[i] = ids.get(state.targets[i]);
+                    dominates = dominates < 0 ? targets[i] : intersect(dominates, targets[i]);
+                    shortest[s] = Math.min(shortest[s], shortest[targets[i]] + 1);
+                }
+                dominator[s] = dominates;
+                depth[s] = depth[dominates] + 1;
+                group(s, state.labels, targets, state.size);
+            }
+
+        }
+
+        /**
+         * Nearest common post-dominator of two states.
+         */
+        private int intersect(int a, int b) {
+            while (a != b) {
+                if (depth[a] > depth[b]) a = dominator[a];
+                else b = dominator[b];
+            }
+            return a;
+        }
+
+        /**
+         * Groups the edges of a state by target, ordered by their
+         * smallest label. i.e. a->1, b->2, c->1 => [ac]->1, b->2
+         */
+        private void group(final int s, final int[] labels, final int[] targets, final int size) {
+            final int[] distinct = new int[size];
+            final int[] counts = new int[size];
+            int groups = 0;
+            for (int i = 0; i < size; i++) {
+                int g = 0;
+                while (g < groups && distinct[g] != targets[i]) g++;
+                if (g == groups) distinct[groups++] = targets[i];
+                counts[g]++;
+            }
+            final int[][] grouped = new int[groups][];
+            for (int g = 0; g < groups; g++) grouped[g] = new int[counts[g]];
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                int g = 0;
+                while (distinct[g] != targets[i]) g++;
+                grouped[g][counts[g]++] = labels[i];
+            }
+            groupTargets[s] = Arrays.copyOf(distinct, groups);
+            groupLabels[s] = grouped;
+        }
+
+        /**
+         * Whether walking from a state to a stop writes nothing.
+         */
+        private boolean writesNothing(final int state, final int stop) {
+            return state == stop || (groupTargets[state].length == 0 && dominator[state] == stop);
+        }
+
+        /**
+         * Writes the path from the start state to the exit with an explicit
+         * stack. frame: kind and flags, state, stop, cursor (+ clusters)
+         * <p>
+         * A walk frame writes the alternatives of its state and continues
+         * from the state's post-dominator until it reaches its stop. An
+         * alternatives frame writes one cluster at a time and a close frame
+         * ends a cluster's group and walks on from the state it shares.
+         */
+        private StringBuilder render() {
+
+            final StringBuilder expression = new StringBuilder();
+            int[] stack = new int[4 * 16];
+            int[][][] clusters = new int[16][][]; // clusters of the alternatives frames, by frame
+            int top = push(stack, 0, WALK, end - 1, end, 0); // the start state is numbered last
+
+            while (top > 0) {
+                if (top + 8 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length << 1);
+                    clusters = Arrays.copyOf(clusters, stack.length >> 2);
+                }
+                final int frame = top - 4;
+                final int flags = stack[frame];
+                final int state = stack[frame + 1];
+                final int stop = stack[frame + 2];
+
+                switch (flags & KINDS) {
+                    case WALK: {
+                        if (state == stop) {
+                            top = frame;
+                            break;
+                        }
+                        if (dominator[state] == stop) top = frame; // nothing left to walk
+                        else stack[frame + 1] = dominator[state];
+                        if (groupTargets[state].length == 0) break; // Terminate; final state
+                        top = alternatives(expression, stack, clusters, top, state, all(state), dominator[state], true);
+                        break;
+                    }
+                    case CLOSE: {
+                        expression.append(PAREN_CLOSE);
+                        stack[frame] = WALK;
+                        break;
+                    }
+                    default: { // ALTERNATIVES
+                        final int cursor = stack[frame + 3];
+                        final int[][] members = clusters[frame >> 2];
+                        if (cursor < members.length) {
+                            if ((flags & STARTED) != 0) expression.append(ALTERNATION);
+                            stack[frame] = flags | STARTED;
+                            stack[frame + 3] = cursor + 1;
+                            final int[] cluster = members[cursor];
+                            if (cluster.length == 1) {
+                                label(expression, groupLabels[state][cluster[0]]);
+                                top = push(stack, top, WALK, groupTargets[state][cluster[0]], stop, 0);
+                            } else { // (?:run|walk)s
+                                final int shared = meet(state, cluster);
+                                expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
+                                top = push(stack, top, CLOSE, shared, stop, 0);
+                                top = alternatives(expression, stack, clusters, top, state, cluster, shared, false);
+                            }
+                            break;
+                        }
+                        if ((flags & ALTERNATION_GROUP) != 0) expression.append(PAREN_CLOSE);
+                        if ((flags & OPTIONAL_GROUP) != 0) expression.append(PAREN_CLOSE);
+                        if ((flags & OPTIONAL) != 0) expression.append(QUESTION_MARK);
+                        clusters[frame >> 2] = null;
+                        top = frame;
+                    }
+                }
+            }
+
+            return expression;
+
+        }
+
+        private static int push(final int[] stack, final int top, final int flags,
+                                final int state, final int stop, final int cursor) {
+            stack[top] = flags;
+            stack[top + 1] = state;
+            stack[top + 2] = stop;
+            stack[top + 3] = cursor;
+            return top + 4;
+        }
+
+        private int[] all(final int state) {
+            final int[] members = new int[groupTargets[state].length];
+            for (int g = 0; g < members.length; g++) members[g] = g;
+            return members;
+        }
+
+        /**
+         * Returns the farthest post-dominator of a state before the stop
+         * that still writes something, or the stop if there is none. Two
+         * alternatives with the same one share at least its suffix.
+         */
+        private int shared(int state, final int stop) {
+            if (state == stop) return stop;
+            while (dominator[state] != stop && !writesNothing(dominator[state], stop)) state = dominator[state];
+            return writesNothing(state, stop) ? stop : state;
+        }
+
+        /**
+         * Returns the nearest state that every alternative of a cluster
+         * passes through, their common suffix starts there.
+         */
+        private int meet(final int state, final int[] cluster) {
+            int shared = groupTargets[state][cluster[0]];
+            for (int m = 1; m < cluster.length; m++) shared = intersect(shared, groupTargets[state][cluster[m]]);
+            return shared;
+        }
+
+        /**
+         * Clusters some target groups of a state by the state they share
+         * before the stop, writes the group openers and pushes the frame.
+         * Only the alternatives of a whole state can be optional.
+         *
+         * @return new stack top
+         */
+        private int alternatives(final StringBuilder expression, final int[] stack, final int[][][] clusters,
+                                 final int top, final int state, final int[] members, final int stop,
+                                 final boolean whole) {
+
+            final int[] keys = new int[members.length]; // shared state of each cluster
+            final int[] owner = new int[members.length]; // cluster of each member
+            final int[] sizes = new int[members.length];
+            int count = 0;
+            for (int m = 0; m < members.length; m++) {
+                final int shared = shared(groupTargets[state][members[m]], stop);
+                int c = 0;
+                if (shared == stop) c = count; // shares nothing, a cluster of its own
+                else while (c < count && keys[c] != shared) c++;
+                if (c == count) keys[count++] = shared;
+                owner[m] = c;
+                sizes[c]++;
+            }
+            // a cluster costs a (?:) group, so it must share more than that.
+            // every path to the stop is at least as long as the shortest word
+            int total = count;
+            for (int c = 0; c < count; c++) {
+                if (sizes[c] < 2) continue;
+                final int[] cluster = new int[sizes[c]];
+                for (int m = 0, i = 0; m < members.length; m++) if (owner[m] == c) cluster[i++] = members[m];
+                if ((sizes[c] - 1) * (shortest[meet(state, cluster)] - shortest[stop]) < 5) {
+                    total += sizes[c] - 1;
+                    sizes[c] = -sizes[c]; // dissolved into its members
+                }
+            }
+            final int[][] grouped = new int[total][];
+            final int[] first = new int[count]; // first cluster index of each cluster
+            for (int c = 0, g = 0; c < count; c++) {
+                first[c] = g;
+                if (sizes[c] > 0) grouped[g++] = new int[sizes[c]];
+                else for (int i = 0; i < -sizes[c]; i++) grouped[g++] = new int[1];
+            }
+            final int[] filled = new int[count];
+            for (int m = 0; m < members.length; m++) {
+                final int c = owner[m];
+                if (sizes[c] > 0) grouped[first[c]][filled[c]++] = members[m];
+                else grouped[first[c] + filled[c]++][0] = members[m];
+            }
+            count = total;
+
+            int flags = ALTERNATIVES;
+            if (whole && count > 1) flags |= ALTERNATION_GROUP;
+            if (whole && states[state].terminal) {
+                flags |= OPTIONAL;
+                // a single optional character or class and an alternation group
+                // only need a ?, i.e. abc? (?:a|bc)?
+                if (count == 1 && (grouped[0].length > 1 || !writesNothing(groupTargets[state][members[0]], stop)))
+                    flags |= OPTIONAL_GROUP;
+            }
+            if ((flags & OPTIONAL_GROUP) != 0) expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
+            if ((flags & ALTERNATION_GROUP) != 0) expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
+            clusters[top >> 2] = grouped;
+            return push(stack, top, flags, state, stop, 0);
+
+        }
+
+        private static void label(final StringBuilder expression, final int[] labels) {
+            if (labels.length == 1) Common.appendLiteral(expression, labels[0]);
+            else expression.append(SetExpression.of(labels).toRegex()); // [abc]
+        }
+
+    }
+
+}
@@ -2,8 +2,12 @@ package dev.yasint.RexPlainDSL.complex;
 
 import dev.yasint.RexPlainDSL.api.Expression;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static dev.yasint.RexPlainDSL.api.MetaCharacters.*;
 
@@ -12,11 +16,39 @@ import static dev.yasint.RexPlainDSL.api.MetaCharacters.*;
  * This generates a regular expression number range given
  * inclusive start and end integers. This implementation's
  * running time is O(log n).
+ * <p>
+ * The range is split into sub-ranges that only differ in their trailing
+ * digits, i.e. 1-25675 => 1-9, 10-99, ... 25670-25675. The boundaries are
+ * computed arithmetically digit by digit and kept as [start, end] pairs
+ * in two small arrays, then every sub-range is written into a single
+ * buffer. The expressions of recently used ranges are cached, so common
+ * ranges like ports, years or status codes are synthesized once.
+ * <p>
+ * Ranges that reach 10^18 would overflow a long at their boundaries, i.e.
+ * the end of 10^18 is 10^19 - 1. Those are split with the same algorithm on
+ * their decimal digits, so the numbers can be arbitrarily large.
  */
 public class RangeExpression implements Expression {
 
-    private final int _rStart;
-    private final int _rEnd;
+    private static final long LONG_LIMIT = 1_000_000_000_000_000_000L; // 10^18, ranges below it are split in longs
+    private static final int MAX_DIGITS = 18; // of a long below the limit
+    private static final int CACHE_SIZE = 1024; // most recently used ranges kept
+
+    // (start, end) => expression, least recently used first
+    private static final Map<Key, String> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<Key, String>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Key, String> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            }
+    );
+
+    private final long _rStart;
+    private final long _rEnd;
+    // Same range when it reaches the limit, null otherwise
+    private final BigInteger _bStart;
+    private final BigInteger _bEnd;
 
     /**
      * Creates an int range expression
@@ -25,210 +57,351 @@ public class RangeExpression implements Expression {
      * @param _rEnd   int end inclusive
      */
     public RangeExpression(int _rStart, int _rEnd) {
+        this((long) _rStart, (long) _rEnd);
+    }
+
+    /**
+     * Creates a long range expression
+     *
+     * @param _rStart long start inclusive
+     * @param _rEnd   long end inclusive
+     */
+    public RangeExpression(long _rStart, long _rEnd) {
         this._rStart = _rStart;
         this._rEnd = _rEnd;
+        this._bStart = _rEnd < LONG_LIMIT ? null : BigInteger.valueOf(_rStart);
+        this._bEnd = _rEnd < LONG_LIMIT ? null : BigInteger.valueOf(_rEnd);
     }
 
     /**
-     * Marks the left boundaries from the range start
+     * Creates an arbitrary-precision range expression
      *
-     * @param start int range
-     * @param end   int range
-     * @return left boundaries
+     * @param _bStart start inclusive
+     * @param _bEnd   end inclusive
      */
-    private static LinkedList<Range> leftBounds(int start, int end) {
-        final LinkedList<Range> result = new LinkedList<>();
-        while (start < end) {
-            final Range range = Range.fromStart(start);
-            result.add(range);
-            start = range.end + 1;
+    public RangeExpression(BigInteger _bStart, BigInteger _bEnd) {
+        final boolean small = _bEnd.compareTo(BigInteger.valueOf(LONG_LIMIT)) < 0;
+        this._rStart = small ? _bStart.longValue() : 0;
+        this._rEnd = small ? _bEnd.longValue() : 0;
+        this._bStart = small ? null : _bStart;
+        this._bEnd = small ? null : _bEnd;
+    }
+
+    @Override
+    public StringBuilder toRegex() {
+        if (_bEnd != null) return new StringBuilder(synthesize(_bStart, _bEnd));
+        final Key key = new Key(_rStart, _rEnd);
+        String expression = CACHE.get(key);
+        if (expression == null) {
+            expression = synthesize(_rStart, _rEnd);
+            CACHE.put(key, expression);
         }
-        return result;
+        return new StringBuilder(expression);
     }
 
     /**
-     * Marks the right boundaries from the range end
+     * Splits the range at its digit boundaries and writes the sub-ranges
+     * from the highest to the lowest one. So the match will go from high
+     * to low. Otherwise, even if it has 2-digits it'll only match 1; if
+     * it's an option.
      *
-     * @param start int range
-     * @param end   int range
-     * @return right boundaries
+     * @param start long range
+     * @param end   long range, below the limit
+     * @return range expression
      */
-    private static LinkedList<Range> rightBounds(int start, int end) {
-        final LinkedList<Range> result = new LinkedList<>();
+    private static String synthesize(long start, final long end) {
+
+        final StringBuilder expression = new StringBuilder(16 * MAX_DIGITS);
+        final byte[] digits = new byte[MAX_DIGITS << 1]; // of a sub-range start and end
+        if (start >= end) return appendRange(expression, start, start, digits).toString();
+
+        // Left boundaries from the range start, lowest first
+        final long[] left = new long[(MAX_DIGITS + 1) << 1];
+        int lefts = 0;
         while (start < end) {
-            final Range range = Range.fromEnd(end);
-            result.add(range);
-            end = range.start - 1;
+            final long boundary = fromStart(start);
+            left[lefts++] = start;
+            left[lefts++] = boundary;
+            start = boundary + 1;
         }
-        Collections.reverse(result);
-        return result;
-    }
-
-    @Override
-    public StringBuilder toRegex() {
+        final long lastStart = left[lefts - 2], lastEnd = left[lefts - 1];
+        lefts -= 2;
 
-        final LinkedList<Range> left = leftBounds(_rStart, _rEnd);
-        final Range lastLeft = left.removeLast();
-        final LinkedList<Range> right = rightBounds(lastLeft.start, _rEnd);
-        final Range firstRight = right.removeFirst();
+        // Right boundaries from the range end, highest first
+        final long[] right = new long[(MAX_DIGITS + 1) << 1];
+        int rights = 0;
+        for (long e = end; lastStart < e; ) {
+            final long boundary = fromEnd(e);
+            right[rights++] = boundary;
+            right[rights++] = e;
+            e = boundary - 1;
+        }
+        final long firstStart = right[rights - 2], firstEnd = right[rights - 1];
+        rights -= 2;
 
-        // Merge all classes
-        final LinkedList<Range> merged = new LinkedList<>(left);
-        if (!lastLeft.overlaps(firstRight)) {
-            merged.add(lastLeft);
-            merged.add(firstRight);
+        for (int i = 0; i < rights; i += 2) {
+            appendRange(expression, right[i], right[i + 1], digits).append(ALTERNATION);
+        }
+        // The last left and the first right boundaries meet in the middle,
+        // they're joined unless they can be written as they are. cannot be [0-9][0-9]
+        if (lastEnd > firstStart && firstEnd > lastStart) {
+            appendRange(expression, lastStart, firstEnd, digits);
         } else {
-            merged.add(Range.join(lastLeft, firstRight));
+            appendRange(expression, firstStart, firstEnd, digits).append(ALTERNATION);
+            appendRange(expression, lastStart, lastEnd, digits);
+        }
+        for (int i = lefts - 2; i >= 0; i -= 2) {
+            appendRange(expression.append(ALTERNATION), left[i], left[i + 1], digits);
         }
-        merged.addAll(right);
+        return expression.toString();
+
+    }
+
+    /**
+     * Splits a range that reaches the limit like {@link #synthesize(long, long)}
+     * does, on the decimal digits of its boundaries.
+     *
+     * @param start range start
+     * @param end   range end
+     * @return range expression
+     */
+    private static String synthesize(BigInteger start, final BigInteger end) {
 
-        // Append the ranges from reverse order. So the match
-        // will go from high to low. Otherwise, even if its
-        // has 2-digits it'll only match 1; if it's an option.
         final StringBuilder expression = new StringBuilder();
-        for (int i = merged.size() - 1; i >= 0; i--) {
-            expression.append(merged.get(i).toRegex());
-            if (i != 0) expression.append(ALTERNATION);
+        if (start.compareTo(end) >= 0) return appendRange(expression, start, start).toString();
+
+        final List<BigInteger> left = new ArrayList<>();
+        while (start.compareTo(end) < 0) {
+            final BigInteger boundary = fromStart(start);
+            left.add(start);
+            left.add(boundary);
+            start = boundary.add(BigInteger.ONE);
         }
+        final BigInteger lastStart = left.get(left.size() - 2), lastEnd = left.get(left.size() - 1);
 
-        return expression;
+        final List<BigInteger> right = new ArrayList<>();
+        for (BigInteger e = end; lastStart.compareTo(e) < 0; ) {
+            final BigInteger boundary = fromEnd(e);
+            right.add(boundary);
+            right.add(e);
+            e = boundary.subtract(BigInteger.ONE);
+        }
+        final BigInteger firstStart = right.get(right.size() - 2), firstEnd = right.get(right.size() - 1);
+
+        for (int i = 0; i < right.size() - 2; i += 2) {
+            appendRange(expression, right.get(i), right.get(i + 1)).append(ALTERNATION);
+        }
+        if (lastEnd.compareTo(firstStart) > 0 && firstEnd.compareTo(lastStart) > 0) {
+            appendRange(expression, lastStart, firstEnd);
+        } else {
+            appendRange(expression, firstStart, firstEnd).append(ALTERNATION);
+            appendRange(expression, lastStart, lastEnd);
+        }
+        for (int i = left.size() - 4; i >= 0; i -= 2) {
+            appendRange(expression.append(ALTERNATION), left.get(i), left.get(i + 1));
+        }
+        return expression.toString();
 
     }
 
     /**
-     * DynamicRange Expression
+     * Creates a range from the start long by setting the set max range for
+     * digit. The trailing zeros and the digit before them become nines.
+     *
+     * @param start long range
+     * @return end of the range
      */
-    private static final class Range implements Expression {
+    private static long fromStart(final long start) {
+        long boundary = start, rest = start, power = 1;
+        do {
+            final long digit = rest % 10;
+            boundary += (9 - digit) * power;
+            rest /= 10;
+            power *= 10;
+            if (digit != 0) break;
+        } while (rest > 0);
+        return boundary;
+    }
 
-        final private StringBuilder expression;
-        final private int start;
-        final private int end;
+    /**
+     * Creates a range from the end long by setting the set min range for
+     * digit. The trailing nines and the digit before them become zeros.
+     *
+     * @param end long range
+     * @return start of the range
+     */
+    private static long fromEnd(final long end) {
+        long boundary = end, rest = end, power = 1;
+        do {
+            final long digit = rest % 10;
+            boundary -= digit * power;
+            rest /= 10;
+            power *= 10;
+            if (digit != 9) break;
+        } while (rest > 0);
+        return boundary;
+    }
 
-        private Range(int start, int end) {
-            this.start = start;
-            this.end = end;
-            this.expression = new StringBuilder();
-        }
-
-        /**
-         * Creates a range from the end int by setting the set
-         * min range for digit.
-         *
-         * @param end int range
-         * @return range with new start/end
-         */
-        private static Range fromEnd(int end) {
-            final char[] chars = String.valueOf(end).toCharArray();
-            for (int i = chars.length - 1; i >= 0; i--) {
-                if (chars[i] == '9') {
-                    chars[i] = '0';
-                } else {
-                    chars[i] = '0';
-                    break;
-                }
-            }
-            return new Range(Integer.parseInt(String.valueOf(chars)), end);
-        }
-
-        /**
-         * Creates a range from the start int by setting the set
-         * max range for digit.
-         *
-         * @param start int range
-         * @return range with new start/end
-         */
-        private static Range fromStart(int start) {
-            final char[] chars = String.valueOf(start).toCharArray();
-            for (int i = chars.length - 1; i >= 0; i--) {
-                if (chars[i] == '0') {
-                    chars[i] = '9';
-                } else {
-                    chars[i] = '9';
-                    break;
-                }
-            }
-            return new Range(start, Integer.parseInt(String.valueOf(chars)));
+    /**
+     * Creates a range from the start by setting the trailing zeros and the
+     * digit before them to nines, on its decimal digits.
+     *
+     * @param start range start
+     * @return end of the range
+     */
+    private static BigInteger fromStart(final BigInteger start) {
+        final char[] chars = start.toString().toCharArray();
+        for (int i = chars.length - 1; i >= 0; i--) {
+            final boolean zero = chars[i] == '0';
+            chars[i] = '9';
+            if (!zero) break;
         }
+        return new BigInteger(new String(chars));
+    }
 
-        /**
-         * Joins two dynamic ranges together
-         *
-         * @param a left range
-         * @param b right range
-         * @return merged range
-         */
-        private static Range join(Range a, Range b) {
-            // Simply just join two ranges
-            return new Range(a.start, b.end);
+    /**
+     * Creates a range from the end by setting the trailing nines and the
+     * digit before them to zeros, on its decimal digits.
+     *
+     * @param end range end
+     * @return start of the range
+     */
+    private static BigInteger fromEnd(final BigInteger end) {
+        final char[] chars = end.toString().toCharArray();
+        for (int i = chars.length - 1; i >= 0; i--) {
+            final boolean nine = chars[i] == '9';
+            chars[i] = '0';
+            if (!nine) break;
         }
+        return new BigInteger(new String(chars));
+    }
 
-        /**
-         * Checks whether two ranges overlaps together
-         * cannot be [0-9][0-9]
-         *
-         * @param r target range
-         * @return whether it's overlapping or not
-         */
-        private boolean overlaps(final Range r) {
-            // Checks whether current range overlaps the previous range
-            return this.end > r.start && r.end > this.start;
-        }
+    /**
+     * Appends the expression of a range below the limit.
+     *
+     * @param expression buffer to append to
+     * @param start      long range
+     * @param end        long range
+     * @param digits     scratch space for the digits of both
+     * @return the buffer
+     */
+    private static StringBuilder appendRange(final StringBuilder expression, final long start, final long end,
+                                             final byte[] digits) {
+        final int length = toDigits(start, digits, 0);
+        return appendRange(expression, digits, length, MAX_DIGITS, toDigits(end, digits, MAX_DIGITS));
+    }
 
-        @Override
-        public StringBuilder toRegex() {
-
-            final String startStr = String.valueOf(start);
-            final String endStr = String.valueOf(end);
-            int repeatedCount = 0;
-            char previousDigitA = 0, previousDigitB = 0;
-
-            for (int pos = 0; pos < startStr.length(); pos++) {
-
-                char currentDigitA = startStr.charAt(pos);
-                char currentDigitB = endStr.charAt(pos);
-
-                if (currentDigitA == currentDigitB) {
-                    expression.append(currentDigitA);
-                } else {
-                    // previous is equal to this
-                    if (previousDigitA == currentDigitA && previousDigitB == currentDigitB) {
-                        repeatedCount++; // increment the quantifier
-                        if (!(pos == startStr.length() - 1)) {
-                            continue; // if not last
-                        } else { // if it is last
-                            expression
-                                    .append(OPEN_CURLY_BRACE)
-                                    .append(++repeatedCount)
-                                    .append(CLOSE_CURLY_BRACE);
-                            break;
-                        }
-                    }
-                    if (repeatedCount > 0) {
+    /**
+     * Appends the expression of a range that reaches the limit.
+     *
+     * @param expression buffer to append to
+     * @param start      range start
+     * @param end        range end
+     * @return the buffer
+     */
+    private static StringBuilder appendRange(final StringBuilder expression, final BigInteger start,
+                                             final BigInteger end) {
+        final String a = start.toString(), b = end.toString();
+        final byte[] digits = new byte[a.length() + b.length()];
+        for (int i = 0; i < a.length(); i++) digits[i] = (byte) (a.charAt(a.length() - 1 - i) - '0');
+        for (int i = 0; i < b.length(); i++) digits[a.length() + i] = (byte) (b.charAt(b.length() - 1 - i) - '0');
+        return appendRange(expression, digits, a.length(), a.length(), b.length());
+    }
+
+    /**
+     * Appends the expression of a range whose start and end only differ in
+     * their trailing digits. Equal digits are written as they are, the others
+     * as a class and runs of the same class with a counted quantifier.
+     *
+     * @param expression buffer to append to
+     * @param digits     digits of the start and of the end, least significant first
+     * @param length     number of digits of the start, from index 0
+     * @param endOffset  index of the end's digits
+     * @param endLength  number of digits of the end
+     * @return the buffer
+     */
+    private static StringBuilder appendRange(final StringBuilder expression, final byte[] digits,
+                                             final int length, final int endOffset, final int endLength) {
+
+        int repeatedCount = 0;
+        int previousDigitA = -1, previousDigitB = -1;
+
+        for (int pos = 0; pos < length; pos++) {
+
+            final int currentDigitA = digits[length - 1 - pos];
+            final int currentDigitB = digits[endOffset + endLength - 1 - pos];
+
+            if (currentDigitA == currentDigitB) {
+                expression.append((char) ('0' + currentDigitA));
+            } else {
+                // previous is equal to this
+                if (previousDigitA == currentDigitA && previousDigitB == currentDigitB) {
+                    repeatedCount++; // increment the quantifier
+                    if (!(pos == length - 1)) {
+                        continue; // if not last
+                    } else { // if it is last
                         expression
                                 .append(OPEN_CURLY_BRACE)
-                                .append(repeatedCount)
+                                .append(++repeatedCount)
                                 .append(CLOSE_CURLY_BRACE);
-                        repeatedCount = 0;
+                        break;
                     }
-                    expression.append(OPEN_SQUARE_BRACKET)
-                            .append(currentDigitA)
-                            .append(currentDigitB - currentDigitA == 1 ? "" : HYPHEN)
-                            .append(currentDigitB)
-                            .append(CLOSE_SQUARE_BRACKET);
-                    previousDigitA = currentDigitA;
-                    previousDigitB = currentDigitB;
                 }
+                if (repeatedCount > 0) {
+                    expression
+                            .append(OPEN_CURLY_BRACE)
+                            .append(repeatedCount)
+                            .append(CLOSE_CURLY_BRACE);
+                    repeatedCount = 0;
+                }
+                expression.append(OPEN_SQUARE_BRACKET).append((char) ('0' + currentDigitA));
+                if (currentDigitB - currentDigitA != 1) expression.append(HYPHEN);
+                expression.append((char) ('0' + currentDigitB)).append(CLOSE_SQUARE_BRACKET);
+                previousDigitA = currentDigitA;
+                previousDigitB = currentDigitB;
             }
-            return expression;
+        }
+        return expression;
+
+    }
 
+    /**
+     * Writes the decimal digits of a non-negative number, the least
+     * significant one first, and returns how many there are. 0 has one.
+     */
+    private static int toDigits(long number, final byte[] digits, final int offset) {
+        int length = 0;
+        do {
+            digits[offset + length++] = (byte) (number % 10);
+            number /= 10;
+        } while (number > 0);
+        return length;
+    }
+
+    /**
+     * Start and end of a cached range.
+     */
+    private static final class Key {
+
+        private final long start;
+        private final long end;
+
+        private Key(final long start, final long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return start == key.start && end == key.end;
         }
 
         @Override
-        public String toString() {
-            // debug only
-            return String.format("RangeGen { start=%d, end=%d }",
-                    start, end
-            );
+        public int hashCode() {
+            return Long.hashCode(start) * 31 + Long.hashCode(end);
         }
 
     }
@@ -1,279 +1,1161 @@
 package dev.yasint.RexPlainDSL.complex;
 
-import com.google.re2j.Pattern;
 import dev.yasint.RexPlainDSL.api.Expression;
 import dev.yasint.RexPlainDSL.dsl.Literals;
 import dev.yasint.RexPlainDSL.exceptions.InvalidCodepointException;
 import dev.yasint.RexPlainDSL.unicode.UnicodeScript;
+import dev.yasint.RexPlainDSL.unicode.UnicodeTables;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import static dev.yasint.RexPlainDSL.api.MetaCharacters.*;
+import static dev.yasint.RexPlainDSL.util.Common.appendSetElement;
+import static dev.yasint.RexPlainDSL.util.Common.appendSetLiteral;
+import static dev.yasint.RexPlainDSL.util.Common.setElementLength;
 
 /**
- * Synthesis :: Mutable Regular Expression Set
+ * Synthesis :: Immutable Regular Expression Set
  * <p>
  * This generates a regular expression set when given a range
  * or chars. This class handles the simple character class and
  * ranged character classes expressions along with set negation.
+ * <p>
+ * Instances never change after construction. Every operation returns
+ * a new set that shares the unchanged bitmap pages and astral intervals
+ * of its operands, so a set can be cached and used from many threads.
  */
 public class SetExpression implements Expression {
 
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The basic multilingual plane U+0000-U+FFFF is stored as a bitmap of
+     * 1024 words (8 KB) split into 64 pages of 1024 codepoints. An empty page
+     * is null and a full page is the shared {@code FULL_PAGE}, so small sets
+     * stay small and derived sets share every page they did not touch.
+     * Astral codepoints are rare in character classes, so they are kept as a
+     * small list of sorted intervals instead.
+     */
+    private static final int BMP_LIMIT = 0x10000;
+    private static final int BMP_WORDS = BMP_LIMIT >>> 6;
+    private static final int PAGE_WORDS = 16;
+    private static final int PAGES = BMP_WORDS / PAGE_WORDS;
+    private static final long[] FULL_PAGE = filledPage();
+    private static final int OR = 0, AND = 1, AND_NOT = 2; // page operations
+
     /**
-     * Inside a set expression characters such as ^ ] / \ - " ' ` are invalid and
-     * the expression will fail to compile. So, we check each element with this
-     * pattern to escape that are similar. However, ^ no need to escape if it's
-     * not initial (index 0) but we escape it anyways to make the code simpler
-     * to understand.
+     * Unicode classes that were added to a set are remembered as rendering
+     * hints. Bit (ordinal * 2 + negated) is set for each \p{..} or \P{..}
+     * class. Their codepoints are always part of the set, the hint only lets
+     * the renderer choose the class syntax when it's shorter than the ranges.
      */
-    private static final Pattern SET_RESTRICTED = Pattern.compile("[\\^\\]\\\\\\/\\-\"'`]");
+    private static final UnicodeScript[] SCRIPTS = UnicodeScript.values();
+    private static final long[] NO_HINTS = new long[(SCRIPTS.length * 2 + 63) >>> 6];
+    private static final SetExpression[] SCRIPT_CLASSES = new SetExpression[SCRIPTS.length * 2];
 
-    private Set<String> unicodeClasses; // This is not affected to codepoints. i.e. \P{...} \p{...}
-    private Set<Integer> codepoints; // This will be sorted in natural order
-    private boolean negated; // Whether this is negated ^ or not @mutable
+    private final long[] scriptHints; // Unicode classes included in this set. never mutated
+    private final long[][] pages; // Bit n is set when codepoint n is a member. never mutated
+    private final int[] astral; // Sorted, disjoint and non-adjacent [start,end] pairs. never mutated
+    private final boolean negated; // Whether this is negated ^ or not
+    private final boolean folded; // Whether this set is closed under case folding and renders for (?i)
+    private volatile String rendered; // Cached toRegex() output, computed at most a few times
 
     public SetExpression(boolean negated) {
+        this(new long[PAGES][], EMPTY, NO_HINTS, negated);
+    }
+
+    private SetExpression(final long[][] pages, final int[] astral,
+                          final long[] scriptHints, final boolean negated) {
+        this(pages, astral, scriptHints, negated, false);
+    }
+
+    private SetExpression(final long[][] pages, final int[] astral,
+                          final long[] scriptHints, final boolean negated, final boolean folded) {
+        this.pages = pages;
+        this.astral = astral;
+        this.scriptHints = scriptHints;
         this.negated = negated;
-        this.codepoints = new TreeSet<>();
-        this.unicodeClasses = new HashSet<>();
+        this.folded = folded;
     }
 
     /**
-     * Negates this set expression
+     * Builds a positive set from codepoints in any order, duplicates
+     * allowed. BMP codepoints are set straight into the bitmap pages and
+     * astral codepoints are sorted in a primitive array and joined into
+     * intervals in one pass, so nothing is boxed and no intermediate set
+     * is created per codepoint. i.e. of('c', 'a', 'b', 'a') => [a-c]
+     *
+     * @param codepoints codepoints 0x000000 - 0x10FFFF, sorted or not
+     * @return new set
      */
-    public void negate() {
-        this.negated = true;
+    public static SetExpression of(final int... codepoints) {
+        final Bulk bulk = new Bulk();
+        for (final int codepoint : Objects.requireNonNull(codepoints)) bulk.accept(codepoint);
+        return bulk.build();
     }
 
     /**
-     * Add a range of codepoints to this set. This operation will iterate
-     * over the given range inclusively. And store them in the {@code codepoints}
-     * sorted set.
+     * Builds a positive set from a stream of codepoints, duplicates
+     * allowed. Parallel streams are collected into one bitmap per thread
+     * and combined. i.e. fromCodepoints(words.stream().flatMapToInt(String::codePoints))
+     *
+     * @param codepoints codepoints 0x000000 - 0x10FFFF
+     * @return new set
+     */
+    public static SetExpression fromCodepoints(final IntStream codepoints) {
+        return Objects.requireNonNull(codepoints).collect(Bulk::new, Bulk::accept, Bulk::combine).build();
+    }
+
+    /**
+     * Builds a positive set of every codepoint that appears in the given
+     * text. Surrogate pairs are read as one astral codepoint.
+     * i.e. fromText("hello") => [ehlo]
+     *
+     * @param text any text
+     * @return new set
+     */
+    public static SetExpression fromText(final CharSequence text) {
+        Objects.requireNonNull(text);
+        final Bulk bulk = new Bulk();
+        for (int i = 0, length = text.length(); i < length; ) {
+            final int codepoint = Character.codePointAt(text, i);
+            bulk.accept(codepoint);
+            i += Character.charCount(codepoint);
+        }
+        return bulk.build();
+    }
+
+    /**
+     * Returns the complement of this set over the whole codepoint space
+     * [0x000000, 0x10FFFF]. The codepoints are not copied, only the
+     * negation flag is flipped, so negating twice gives back the source.
+     *
+     * @return new complemented set
+     */
+    public SetExpression negate() {
+        return new SetExpression(pages, astral, scriptHints, !negated, folded);
+    }
+
+    /**
+     * Returns the case folded form of this set. It matches every codepoint
+     * that is equal to a member of this set under simple unicode case
+     * folding. i.e. [a-z] => [A-Za-z\u017F\u212A]
+     * <p>
+     * The folded set renders a canonical form for case-insensitive
+     * matching. Only the smallest member of each case orbit is written and
+     * the engine folds the rest back in. i.e. [A-Za-z] => [A-Z] So, it must
+     * be compiled with {@code CASE_INSENSITIVE} or used inside a (?i:...)
+     * group. Folding is sticky, sets combined with a folded set and ranges
+     * added to it are folded as well.
+     * <p>
+     * A negated set folds its listed codepoints and stays negated, the
+     * same way the engine reads a negated class under (?i). i.e. the
+     * folded [^a] is [^A] and matches neither a nor A.
+     *
+     * @return new case folded set
+     */
+    public SetExpression caseFolded() {
+        if (folded) return this;
+        final SetExpression closed = CaseFolding.closure(negated ? negate() : this);
+        return new SetExpression(closed.pages, closed.astral, scriptHints, negated, true);
+    }
+
+    /**
+     * Returns a new set with the given range of codepoints added. The BMP
+     * part of the range is written into copies of the touched bitmap pages
+     * and the astral part is merged into a copy of the astral intervals.
+     * If this set is negated the range is removed from the listed
+     * codepoints instead, so the new set matches the range either way.
      *
      * @param codepointA unicode codepoint from 0x000000
      * @param codepointB unicode codepoint upto 0x10FFFF
+     * @return new set
      */
-    public void addRange(final int codepointA, final int codepointB) {
+    public SetExpression withRange(final int codepointA, final int codepointB) {
         if (Character.isValidCodePoint(codepointA) && Character.isValidCodePoint(codepointB)) {
             if (codepointA > codepointB)
                 throw new InvalidCodepointException("character range is out of order");
-            if (codepointA == codepointB) {
-                codepoints.add(codepointA);
-                return;
-            }
-            for (int i = codepointA; i <= codepointB; i++) codepoints.add(i);
+            if (negated || folded) return union(new SetExpression(false).withRange(codepointA, codepointB));
+            long[][] resultPages = pages;
+            int[] resultAstral = astral;
+            if (codepointA < BMP_LIMIT)
+                resultPages = setBits(pages, codepointA, Math.min(codepointB, BMP_LIMIT - 1));
+            if (codepointB >= BMP_LIMIT)
+                resultAstral = merge(astral, new int[]{Math.max(codepointA, BMP_LIMIT), codepointB});
+            return new SetExpression(resultPages, resultAstral, scriptHints, false);
         } else {
             throw new InvalidCodepointException("invalid codepoint");
         }
     }
 
     /**
-     * Add a single hexadecimal/integer codepoint to this set. Caller may invoke
-     * this function multiple times to add all the values to the set.
+     * Returns a new set with a single hexadecimal/integer codepoint added.
      *
      * @param codepoint 0x000000 - 0x10FFFF
+     * @return new set
      */
-    public void addChar(final int codepoint) {
+    public SetExpression withChar(final int codepoint) {
         if (!Character.isValidCodePoint(codepoint))
             throw new IllegalArgumentException("invalid codepoint");
-        this.codepoints.add(codepoint);
+        return withRange(codepoint, codepoint);
+    }
+
+    /**
+     * Checks whether a codepoint is matched by this set. A BMP lookup
+     * is a single bit test and an astral lookup is a binary search over
+     * the astral intervals.
+     *
+     * @param codepoint 0x000000 - 0x10FFFF
+     * @return true if this set matches the codepoint
+     */
+    public boolean contains(final int codepoint) {
+        if (!Character.isValidCodePoint(codepoint)) return false;
+        final boolean member;
+        if (codepoint < BMP_LIMIT) {
+            member = (word(pages, codepoint >>> 6) & (1L << codepoint)) != 0;
+        } else {
+            int lo = 0, hi = (astral.length >> 1) - 1;
+            boolean found = false;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (astral[(mid << 1) + 1] < codepoint) lo = mid + 1;
+                else if (astral[mid << 1] > codepoint) hi = mid - 1;
+                else {
+                    found = true;
+                    break;
+                }
+            }
+            member = found;
+        }
+        return member != negated;
     }
 
     // Set expression operations, available outside the package
+    //
+    // A set is stored as the codepoints it lists plus a negation flag, so
+    // a negated set means the complement of its listed codepoints. Every
+    // operation is rewritten with De Morgan's laws into an operation on the
+    // listed codepoints. That keeps the result exact and a negated result
+    // stays a compact [^...] class instead of a huge positive one.
+    //
+    //   A  | B  = A | B          A  & B  = A & B
+    //   A  | ~B = ~(B - A)       A  & ~B = A - B
+    //   ~A | B  = ~(A - B)       ~A & B  = B - A
+    //   ~A | ~B = ~(A & B)       ~A & ~B = ~(A | B)
+    //
 
     /**
-     * Performs a union of two regular expressions set.
-     * It will modify the source set @code{this} while operating.
+     * Performs a union of two regular expressions set. Neither
+     * operand is modified.
      *
      * @param b set expression b
-     * @return elements that belongs to this or b
+     * @return new set with elements that belongs to this or b
      */
     public SetExpression union(final SetExpression b) {
-        if (b.negated) {
-            this.codepoints.removeAll(b.codepoints);
-        } else {
-            this.codepoints.addAll(b.codepoints);
-        }
-        return this;
+        if (this.folded != b.folded) return caseFolded().union(b.caseFolded());
+        if (!this.negated && !b.negated) return or(this, b, false);
+        if (!this.negated) return andNot(b, this, true);
+        if (!b.negated) return andNot(this, b, true);
+        return and(this, b, true);
     }
 
     /**
      * Performs a intersection of two regular expressions set.
-     * It will modify the source set @code{this} while operating.
+     * Neither operand is modified.
      *
      * @param b set expression b
-     * @return elements that belongs to this and b
+     * @return new set with elements that belongs to this and b
      */
     public SetExpression intersection(final SetExpression b) {
-        if (b.negated) {
-            this.codepoints.removeAll(b.codepoints);
-        } else {
-            this.codepoints.retainAll(b.codepoints);
-        }
-        return this;
+        if (this.folded != b.folded) return caseFolded().intersection(b.caseFolded());
+        if (!this.negated && !b.negated) return and(this, b, false);
+        if (!this.negated) return andNot(this, b, false);
+        if (!b.negated) return andNot(b, this, false);
+        return or(this, b, true);
     }
 
     /**
      * Performs a subtraction of two regular expressions set.
-     * It will modify the source set @code{this} while operating.
+     * Neither operand is modified. This is the same as the
+     * intersection with the complement of b.
      *
      * @param b set expression b
-     * @return elements that belongs to this and not to b
+     * @return new set with elements that belongs to this and not to b
      */
     public SetExpression difference(final SetExpression b) {
-        if (!b.negated) b.negated = true;
-        this.intersection(b);
-        return this;
+        return intersection(b.negate());
     }
 
     /**
      * This allows you to include unicode blocks to a set expression.
-     * Note that when a block is included to a set. It does not
-     * check for ranges, it simply appends the correct syntax to
-     * the set expression. i.e. [0-9A-Z\p{Arabic}]
+     * The block is resolved into its codepoint intervals, so it takes
+     * part in every set operation like any other range. When rendering,
+     * the class syntax is used instead of the ranges if it's shorter.
+     * i.e. [0-9A-Z\p{Arabic}]
      *
      * @param negated whether this unicode block is negated or not
      * @param block   valid unicode general category / script block
-     * @return this
+     * @return new set with the unicode class
      */
     public SetExpression withUnicodeClass(final UnicodeScript block, final boolean negated) {
-        unicodeClasses.add(
-                Literals.unicodeScriptLiteral(block, negated)
-                        .toRegex().toString()
-        );
-        return this;
+        final int hint = (block.ordinal() << 1) | (negated ? 1 : 0);
+        final SetExpression result = union(scriptClass(hint));
+        final long[] hints = result.scriptHints.clone();
+        hints[hint >>> 6] |= 1L << hint;
+        return new SetExpression(result.pages, result.astral, hints, result.negated, result.folded);
     }
 
     /**
      * Creates a character class expression. This algorithm uses
-     * unicode codepoints to create character class ranges.
+     * unicode codepoints to create character class ranges. The
+     * result is computed once per instance and then copied, so
+     * shared constants such as the POSIX classes render for free.
      *
      * @return set expression
      */
     @Override
     public StringBuilder toRegex() {
+        String regex = rendered;
+        if (regex == null) {
+            // Races are benign here. Every thread computes the same string.
+            rendered = regex = render().toString();
+        }
+        return new StringBuilder(regex);
+    }
+
+    /**
+     * Renders the shortest equivalent form of this set. The candidates
+     * are the listed members i.e. [0-9a-z], the complement of them i.e.
+     * [^0-9a-z], and the forms where known classes such as \d [:alpha:]
+     * or \p{Greek} replace some of the ranges. A set that is exactly one
+     * known class is rendered as that class alone i.e. \d or [[:punct:]]
+     * The complemented form is measured first and only encoded if it wins.
+     * A folded set writes only the smallest member of each case orbit.
+     */
+    private StringBuilder render() {
 
-        // copy the codepoints into a indexed array
-        final Integer[] chars = codepoints.toArray(new Integer[0]);
+        final SetExpression members = negated ? complement() : this;
 
-        // return nothing if the set is empty
-        if (chars.length == 0 && unicodeClasses.isEmpty()) {
+        // return nothing if the set is empty.
+        if (members.isEmpty()) {
             return new StringBuilder(0);
         }
 
-        // return only the unicode script class if it's a singleton
-        if (chars.length == 0) {
-            if (unicodeClasses.size() == 1 && !negated) {
-                return new StringBuilder(unicodeClasses.iterator().next());
+        final StringBuilder positive = new Form(members, scriptHints, false, folded).build();
+        final SetExpression others = negated ? negate() : members.complement();
+
+        // [^] is not a valid class. a set with every codepoint uses the positive form.
+        if (!others.isEmpty()) {
+            final Form complemented = new Form(others, scriptHints, true, folded);
+            // on a tie the positive form wins, it's easier to read.
+            if (complemented.length() < positive.length()) {
+                return complemented.build();
             }
         }
+        return positive;
+
+    }
 
-        // avoid creating a set expression. instead just escape the sequence.
-        // [a] => a (only if its not negated)
-        if (chars.length == 1 && !negated && unicodeClasses.isEmpty()) {
-            return new StringBuilder().append(toRegexInterpretable(chars[0]));
+    /**
+     * Appends every run of listed codepoints as a set element or range.
+     * Runs of the bitmap are found a word at a time. Then the astral
+     * intervals are already maximal runs of codepoints. A run that
+     * reaches U+FFFF continues into an astral interval at U+10000.
+     * If the builder is null the runs are only measured.
+     *
+     * @param expression target builder or null
+     * @param before     only the runs that start before this codepoint
+     * @return length of the appended runs
+     */
+    private int appendRuns(final StringBuilder expression, final int before) {
+        int length = 0, start = nextSetBit(0), astralFrom = 0;
+        while (start < Math.min(BMP_LIMIT, before)) {
+            final int end = nextClearBit(start) - 1;
+            if (end == BMP_LIMIT - 1 && astral.length > 0 && astral[0] == BMP_LIMIT) {
+                length += appendRange(expression, start, astral[1]);
+                astralFrom = 2;
+                break;
+            }
+            length += appendRange(expression, start, end);
+            start = end + 1 < BMP_LIMIT ? nextSetBit(end + 1) : BMP_LIMIT;
         }
+        for (int i = astralFrom; i < astral.length && astral[i] < before; i += 2) {
+            length += appendRange(expression, astral[i], astral[i + 1]);
+        }
+        return length;
+    }
 
-        // we use a string-builder to construct the set expression iteratively.
-        final StringBuilder expression = new StringBuilder();
-        expression.append(OPEN_SQUARE_BRACKET); // open bracket
-        if (negated) expression.append(CARAT); // append carat if negated
+    /**
+     * Checks whether every listed codepoint of this set is also listed in b.
+     */
+    private boolean isSubsetOf(final SetExpression b) {
+        for (int p = 0; p < PAGES; p++) {
+            final long[] x = pages[p], y = b.pages[p];
+            if (x == null || x == y || y == FULL_PAGE) continue;
+            if (y == null) return false;
+            for (int w = 0; w < PAGE_WORDS; w++) {
+                if ((x[w] & ~y[w]) != 0) return false;
+            }
+        }
+        // every interval of this set must be inside one interval of b
+        for (int i = 0, k = 0; i < astral.length; i += 2) {
+            while (k < b.astral.length && b.astral[k + 1] < astral[i]) k += 2;
+            if (k == b.astral.length || b.astral[k] > astral[i] || b.astral[k + 1] < astral[i + 1]) return false;
+        }
+        return true;
+    }
 
-        int rangeStartIndex = -1;
-        boolean isInRange = false;
+    /**
+     * Finds the last member of the bitmap, or -1 if the bitmap is empty.
+     */
+    private int lastSetBit() {
+        for (int p = PAGES - 1; p >= 0; p--) {
+            final long[] page = pages[p];
+            if (page == null) continue;
+            for (int w = PAGE_WORDS - 1; w >= 0; w--) {
+                if (page[w] != 0) {
+                    return (p * PAGE_WORDS + w) * 64 + 63 - Long.numberOfLeadingZeros(page[w]);
+                }
+            }
+        }
+        return -1;
+    }
 
-        for (int curIndex = 0; curIndex < chars.length; curIndex++) {
-            // Check if this can be a range
-            if (curIndex + 1 < chars.length) {
-                if (chars[curIndex + 1] - chars[curIndex] == 1) {
-                    if (!isInRange) { // if this is the start
-                        rangeStartIndex = curIndex;
-                        isInRange = true;
-                    }
+    /**
+     * Checks whether this set lists no codepoints at all.
+     */
+    private boolean isEmpty() {
+        return nextSetBit(0) == BMP_LIMIT && astral.length == 0;
+    }
+
+    /**
+     * Returns the positive set of a unicode class hint. Built once per
+     * class from {@link UnicodeTables}. A negated class is the complement
+     * of the positive one.
+     *
+     * @param hint ordinal * 2 + negated
+     * @return set listing the codepoints of the class
+     */
+    private static SetExpression scriptClass(final int hint) {
+        SetExpression klass = SCRIPT_CLASSES[hint];
+        if (klass == null) {
+            // Races are benign, the instances are immutable and equal.
+            if ((hint & 1) == 0) {
+                klass = fromIntervals(UnicodeTables.intervals(SCRIPTS[hint >>> 1]));
+            } else {
+                klass = scriptClass(hint & ~1).complement();
+            }
+            SCRIPT_CLASSES[hint] = klass;
+        }
+        return klass;
+    }
+
+    /**
+     * Builds a positive set from sorted, disjoint [start,end] pairs in
+     * one pass.
+     *
+     * @param intervals sorted inclusive pairs
+     * @return new set
+     */
+    private static SetExpression fromIntervals(final int[] intervals) {
+        final long[][] pages = new long[PAGES][];
+        int i = 0;
+        for (; i < intervals.length && intervals[i] < BMP_LIMIT; i += 2) {
+            fillBits(pages, intervals[i], Math.min(intervals[i + 1], BMP_LIMIT - 1));
+        }
+        int[] astral = EMPTY;
+        if (i > 0 && intervals[i - 1] >= BMP_LIMIT) i -= 2; // straddles U+FFFF
+        if (i < intervals.length) {
+            astral = Arrays.copyOfRange(intervals, i, intervals.length);
+            astral[0] = Math.max(astral[0], BMP_LIMIT);
+        }
+        for (int p = 0; p < PAGES; p++) {
+            if (pages[p] != null) pages[p] = canonical(pages[p]);
+        }
+        return new SetExpression(pages, astral, NO_HINTS, false);
+    }
+
+    /**
+     * Returns a positive set listing exactly the codepoints that this
+     * set's listing does not, over [0x000000, 0x10FFFF].
+     */
+    private SetExpression complement() {
+        final long[][] inverted = new long[PAGES][];
+        for (int p = 0; p < PAGES; p++) {
+            final long[] page = pages[p];
+            if (page == null) {
+                inverted[p] = FULL_PAGE;
+            } else if (page != FULL_PAGE) {
+                final long[] copy = new long[PAGE_WORDS];
+                for (int w = 0; w < PAGE_WORDS; w++) copy[w] = ~page[w];
+                inverted[p] = canonical(copy);
+            }
+        }
+        return new SetExpression(
+                inverted,
+                subtract(new int[]{BMP_LIMIT, Character.MAX_CODE_POINT}, astral),
+                NO_HINTS, false
+        );
+    }
+
+    /**
+     * Union of the listed codepoints of x and y. The result is negated if
+     * requested. An operand is returned as it is when nothing changed.
+     */
+    private static SetExpression or(final SetExpression x, final SetExpression y, final boolean negated) {
+        return derive(x, combine(x.pages, y.pages, OR), merge(x.astral, y.astral), hints(x, y), negated,
+                x.folded && y.folded);
+    }
+
+    /**
+     * Intersection of the listed codepoints of x and y.
+     */
+    private static SetExpression and(final SetExpression x, final SetExpression y, final boolean negated) {
+        return derive(x, combine(x.pages, y.pages, AND), intersect(x.astral, y.astral), hints(x, y), negated,
+                x.folded && y.folded);
+    }
+
+    /**
+     * The listed codepoints of x without the listed codepoints of y.
+     */
+    private static SetExpression andNot(final SetExpression x, final SetExpression y, final boolean negated) {
+        return derive(x, combine(x.pages, y.pages, AND_NOT), subtract(x.astral, y.astral), hints(x, y), negated,
+                x.folded && y.folded);
+    }
+
+    /**
+     * Unicode class hints of both operands. They are only candidates for
+     * rendering, so keeping all of them is always safe.
+     */
+    private static long[] hints(final SetExpression x, final SetExpression y) {
+        long[] result = x.scriptHints;
+        for (int i = 0; i < result.length; i++) {
+            if ((y.scriptHints[i] & ~result[i]) != 0) {
+                if (result == x.scriptHints) result = result.clone();
+                result[i] |= y.scriptHints[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a set from computed parts. If the parts are the ones of
+     * the source set, the source is returned as it is.
+     */
+    private static SetExpression derive(final SetExpression source, final long[][] pages, final int[] astral,
+                                        final long[] scriptHints, final boolean negated, final boolean folded) {
+        if (pages == source.pages && astral == source.astral && scriptHints == source.scriptHints
+                && negated == source.negated && folded == source.folded) {
+            return source;
+        }
+        return new SetExpression(pages, astral, scriptHints, negated, folded);
+    }
+
+    private static int appendRange(final StringBuilder expression, final int start, final int end) {
+        // Check if the range is only within two characters.
+        // i.e. a-b then we can simplify it to [ab]
+        final boolean hyphen = end - start > 1;
+        if (expression != null) {
+            appendSetElement(expression, start);
+            if (hyphen) expression.append(HYPHEN);
+            if (end != start) appendSetElement(expression, end);
+        }
+        return setElementLength(start) + (hyphen ? 1 : 0) + (end != start ? setElementLength(end) : 0);
+    }
+
+    /**
+     * Returns the only codepoint of this set, or -1 if the set has
+     * zero or more than one codepoint.
+     *
+     * @param first the first set bit of the bitmap
+     * @return singleton codepoint or -1
+     */
+    private int singleton(final int first) {
+        if (first < BMP_LIMIT) {
+            if (astral.length != 0) return -1;
+            if (first + 1 < BMP_LIMIT && nextSetBit(first + 1) != BMP_LIMIT) return -1;
+            return first;
+        }
+        if (astral.length == 2 && astral[0] == astral[1]) return astral[0];
+        return -1;
+    }
+
+    /**
+     * Finds the first member of the bitmap at or after {@code from}.
+     * Empty pages are skipped without looking at their words.
+     *
+     * @param from inclusive BMP codepoint
+     * @return codepoint or {@code BMP_LIMIT} if there is none
+     */
+    private int nextSetBit(final int from) {
+        int index = from >>> 6;
+        long word = word(pages, index) & (-1L << from);
+        while (word == 0) {
+            if (++index == BMP_WORDS) return BMP_LIMIT;
+            if (pages[index / PAGE_WORDS] == null) {
+                index = (index / PAGE_WORDS) * PAGE_WORDS + PAGE_WORDS - 1;
+                continue;
+            }
+            word = word(pages, index);
+        }
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Finds the first non member of the bitmap at or after {@code from}.
+     *
+     * @param from inclusive BMP codepoint
+     * @return codepoint or {@code BMP_LIMIT} if the run reaches U+FFFF
+     */
+    private int nextClearBit(final int from) {
+        int index = from >>> 6;
+        long word = ~word(pages, index) & (-1L << from);
+        while (word == 0) {
+            if (++index == BMP_WORDS) return BMP_LIMIT;
+            word = ~word(pages, index);
+        }
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private static long word(final long[][] pages, final int index) {
+        final long[] page = pages[index / PAGE_WORDS];
+        return page == null ? 0L : page[index % PAGE_WORDS];
+    }
+
+    private static long[] filledPage() {
+        final long[] page = new long[PAGE_WORDS];
+        Arrays.fill(page, -1L);
+        return page;
+    }
+
+    /**
+     * Returns a copy of the page table where every bit from start to end
+     * inclusively is set. Only the touched pages are copied.
+     *
+     * @param source page table to copy from
+     * @param start  inclusive BMP codepoint
+     * @param end    inclusive BMP codepoint
+     * @return new page table
+     */
+    private static long[][] setBits(final long[][] source, final int start, final int end) {
+        final long[][] result = source.clone();
+        for (int p = (start >>> 6) / PAGE_WORDS; p <= (end >>> 6) / PAGE_WORDS; p++) {
+            if (result[p] != null) result[p] = result[p].clone(); // copy on write
+        }
+        fillBits(result, start, end);
+        for (int p = (start >>> 6) / PAGE_WORDS; p <= (end >>> 6) / PAGE_WORDS; p++) {
+            result[p] = canonical(result[p]);
+        }
+        return result;
+    }
+
+    /**
+     * Sets every bit from start to end inclusively in place. Missing pages
+     * are allocated. The caller owns the touched pages.
+     */
+    private static void fillBits(final long[][] pages, final int start, final int end) {
+        final int startWord = start >>> 6, endWord = end >>> 6;
+        for (int w = startWord; w <= endWord; w++) {
+            long mask = -1L;
+            if (w == startWord) mask &= -1L << start; // shifts are mod 64
+            if (w == endWord) mask &= -1L >>> (63 - (end & 63));
+            final int p = w / PAGE_WORDS;
+            if (pages[p] == null) pages[p] = new long[PAGE_WORDS];
+            pages[p][w % PAGE_WORDS] |= mask;
+        }
+    }
+
+    /**
+     * Combines two page tables word by word. Pages that are decided by
+     * an empty or full operand are shared instead of being recomputed,
+     * and the source table of a is returned when no page changed.
+     *
+     * @param a  left page table
+     * @param b  right page table
+     * @param op one of OR, AND or AND_NOT
+     * @return combined page table
+     */
+    private static long[][] combine(final long[][] a, final long[][] b, final int op) {
+        long[][] result = null;
+        for (int p = 0; p < PAGES; p++) {
+            final long[] x = a[p], y = b[p];
+            final long[] page;
+            switch (op) {
+                case OR:
+                    if (y == null || x == FULL_PAGE) page = x;
+                    else if (x == null || y == FULL_PAGE) page = y;
+                    else page = compute(x, y, op);
+                    break;
+                case AND:
+                    if (x == null || y == FULL_PAGE) page = x;
+                    else if (y == null || x == FULL_PAGE) page = y;
+                    else page = compute(x, y, op);
+                    break;
+                default: // AND_NOT
+                    if (x == null || y == null) page = x;
+                    else if (y == FULL_PAGE) page = null;
+                    else page = compute(x, y, op);
+            }
+            if (page != x && result == null) result = a.clone();
+            if (result != null) result[p] = page;
+        }
+        return result == null ? a : result;
+    }
+
+    private static long[] compute(final long[] x, final long[] y, final int op) {
+        final long[] page = new long[PAGE_WORDS];
+        for (int w = 0; w < PAGE_WORDS; w++) {
+            page[w] = op == OR ? x[w] | y[w] : op == AND ? x[w] & y[w] : x[w] & ~y[w];
+        }
+        if (Arrays.equals(page, x)) return x; // share the unchanged page
+        if (Arrays.equals(page, y)) return y;
+        return canonical(page);
+    }
+
+    /**
+     * Replaces an empty page with null and a full page with the shared
+     * {@code FULL_PAGE} constant.
+     */
+    private static long[] canonical(final long[] page) {
+        long and = -1L, or = 0L;
+        for (final long w : page) {
+            and &= w;
+            or |= w;
+        }
+        if (or == 0L) return null;
+        if (and == -1L) return FULL_PAGE;
+        return page;
+    }
+
+    /**
+     * Merges two sorted interval arrays into one. O(n + m)
+     *
+     * @return union of a and b
+     */
+    private static int[] merge(final int[] a, final int[] b) {
+        final int aSize = a.length, bSize = b.length;
+        final int[] out = new int[aSize + bSize];
+        int i = 0, j = 0, n = 0;
+        while (i < aSize || j < bSize) {
+            final int start, end;
+            if (j >= bSize || (i < aSize && a[i] <= b[j])) {
+                start = a[i];
+                end = a[i + 1];
+                i += 2;
+            } else {
+                start = b[j];
+                end = b[j + 1];
+                j += 2;
+            }
+            if (n > 0 && start <= out[n - 1] + 1) {
+                out[n - 1] = Math.max(out[n - 1], end); // extend the previous one
+            } else {
+                out[n++] = start;
+                out[n++] = end;
+            }
+        }
+        return shared(out, n, a, b);
+    }
+
+    /**
+     * Intersects two sorted interval arrays. O(n + m)
+     *
+     * @return intersection of a and b
+     */
+    private static int[] intersect(final int[] a, final int[] b) {
+        final int aSize = a.length, bSize = b.length;
+        final int[] out = new int[aSize + bSize];
+        int i = 0, j = 0, n = 0;
+        while (i < aSize && j < bSize) {
+            final int start = Math.max(a[i], b[j]);
+            final int end = Math.min(a[i + 1], b[j + 1]);
+            if (start <= end) {
+                out[n++] = start;
+                out[n++] = end;
+            }
+            // advance whichever interval finishes first
+            if (a[i + 1] < b[j + 1]) i += 2;
+            else j += 2;
+        }
+        return shared(out, n, a, b);
+    }
+
+    /**
+     * Subtracts the intervals of b from a. O(n + m)
+     *
+     * @return elements of a that are not in b
+     */
+    private static int[] subtract(final int[] a, final int[] b) {
+        final int aSize = a.length, bSize = b.length;
+        final int[] out = new int[aSize + bSize];
+        int i = 0, j = 0, n = 0;
+        while (i < aSize) {
+            int start = a[i];
+            final int end = a[i + 1];
+            // skip the intervals of b that lie completely before this one
+            while (j < bSize && b[j + 1] < start) j += 2;
+            int k = j;
+            while (k < bSize && b[k] <= end) {
+                if (b[k] > start) {
+                    out[n++] = start;
+                    out[n++] = b[k] - 1;
+                }
+                start = Math.max(start, b[k + 1] + 1);
+                k += 2;
+            }
+            if (start <= end) {
+                out[n++] = start;
+                out[n++] = end;
+            }
+            i += 2;
+        }
+        return shared(out, n, a, b);
+    }
+
+    /**
+     * Trims a computed interval array. If it is equal to one of the operands
+     * that operand is returned instead, so unchanged intervals are shared.
+     */
+    private static int[] shared(final int[] out, final int n, final int[] a, final int[] b) {
+        if (n == 0) return EMPTY;
+        if (n == a.length && Arrays.equals(out, 0, n, a, 0, n)) return a;
+        if (n == b.length && Arrays.equals(out, 0, n, b, 0, n)) return b;
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Collects unordered codepoints for the bulk builders. BMP codepoints
+     * are set in a private page table and astral codepoints are appended
+     * to a growable array that is sorted once by {@link #build()}.
+     */
+    private static final class Bulk implements IntConsumer {
+
+        private final long[][] pages = new long[PAGES][];
+        private int[] astral = EMPTY;
+        private int size = 0;
+
+        @Override
+        public void accept(final int codepoint) {
+            if (!Character.isValidCodePoint(codepoint))
+                throw new InvalidCodepointException("invalid codepoint");
+            if (codepoint < BMP_LIMIT) {
+                final int p = codepoint >>> 10; // 1024 codepoints per page
+                if (pages[p] == null) pages[p] = new long[PAGE_WORDS];
+                pages[p][(codepoint >>> 6) % PAGE_WORDS] |= 1L << codepoint; // shifts are mod 64
+                return;
+            }
+            if (size == astral.length) astral = Arrays.copyOf(astral, Math.max(8, size << 1));
+            astral[size++] = codepoint;
+        }
+
+        private void combine(final Bulk other) {
+            for (int p = 0; p < PAGES; p++) {
+                final long[] page = other.pages[p];
+                if (page == null) continue;
+                if (pages[p] == null) {
+                    pages[p] = page;
+                } else {
+                    for (int w = 0; w < PAGE_WORDS; w++) pages[p][w] |= page[w];
+                }
+            }
+            if (other.size == 0) return;
+            if (size + other.size > astral.length) astral = Arrays.copyOf(astral, size + other.size);
+            System.arraycopy(other.astral, 0, astral, size, other.size);
+            size += other.size;
+        }
+
+        private SetExpression build() {
+            for (int p = 0; p < PAGES; p++) {
+                if (pages[p] != null) pages[p] = canonical(pages[p]);
+            }
+            Arrays.sort(astral, 0, size);
+            // join the sorted codepoints into intervals, dropping duplicates
+            int[] intervals = EMPTY;
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                final int codepoint = astral[i];
+                if (n > 0 && codepoint <= intervals[n - 1] + 1) {
+                    intervals[n - 1] = Math.max(intervals[n - 1], codepoint);
                     continue;
                 }
+                if (n == intervals.length) intervals = Arrays.copyOf(intervals, Math.max(8, n << 1));
+                intervals[n++] = codepoint;
+                intervals[n++] = codepoint;
             }
-            if (isInRange) {
-                // Check if the range is only within two characters.
-                // i.e. a-b then we can simplify it to [ab]
-                if (curIndex - rangeStartIndex == 1 /*difference*/) {
-                    expression
-                            .append(toRegexInterpretable(chars[rangeStartIndex]))
-                            .append(toRegexInterpretable(chars[curIndex]));
+            return new SetExpression(pages, n == intervals.length ? intervals : Arrays.copyOf(intervals, n), NO_HINTS, false);
+        }
+
+    }
+
+    /**
+     * Simple unicode case folding orbits from {@link UnicodeTables}. The
+     * tables are loaded on the first use of a case folded set.
+     */
+    private static final class CaseFolding {
+
+        private static final int[] CODEPOINTS; // every cased codepoint, ascending
+        private static final int[] NEXT; // next member of the orbit of CODEPOINTS[i]
+        private static final SetExpression NON_MINIMAL; // members that aren't the smallest of their orbit
+
+        static {
+            final int[] orbits = UnicodeTables.caseOrbits();
+            CODEPOINTS = new int[orbits.length >> 1];
+            NEXT = new int[orbits.length >> 1];
+            final long[][] pages = new long[PAGES][];
+            int[] astral = EMPTY;
+            for (int i = 0; i < CODEPOINTS.length; i++) {
+                CODEPOINTS[i] = orbits[i << 1];
+                NEXT[i] = orbits[(i << 1) + 1];
+            }
+            for (int i = 0; i < CODEPOINTS.length; i++) {
+                // the orbit wraps from its largest member to the smallest
+                if (NEXT[i] > CODEPOINTS[i]) {
+                    final int member = NEXT[i];
+                    if (member < BMP_LIMIT) fillBits(pages, member, member);
+                    else astral = merge(astral, new int[]{member, member});
+                }
+            }
+            for (int p = 0; p < PAGES; p++) {
+                if (pages[p] != null) pages[p] = canonical(pages[p]);
+            }
+            NON_MINIMAL = new SetExpression(pages, astral, NO_HINTS, false);
+        }
+
+        /**
+         * Adds the whole case orbit of every member of a positive set.
+         *
+         * @param set positive set
+         * @return positive set closed under case folding
+         */
+        private static SetExpression closure(final SetExpression set) {
+            final long[][] pages = set.pages.clone();
+            final boolean[] owned = new boolean[PAGES];
+            int[] added = new int[8];
+            int n = 0;
+            for (int i = 0; i < CODEPOINTS.length; i++) {
+                if (!set.contains(CODEPOINTS[i])) continue;
+                for (int k = i, member = NEXT[k]; member != CODEPOINTS[i]; member = NEXT[k]) {
+                    if (member < BMP_LIMIT) {
+                        final int p = (member >>> 6) / PAGE_WORDS;
+                        if (!owned[p]) {
+                            pages[p] = pages[p] == null ? new long[PAGE_WORDS] : pages[p].clone(); // copy on write
+                            owned[p] = true;
+                        }
+                        pages[p][(member >>> 6) % PAGE_WORDS] |= 1L << member;
+                    } else {
+                        if (n == added.length) added = Arrays.copyOf(added, n << 1);
+                        added[n++] = member;
+                    }
+                    k = Arrays.binarySearch(CODEPOINTS, member);
+                }
+            }
+            for (int p = 0; p < PAGES; p++) {
+                if (owned[p]) pages[p] = canonical(pages[p]);
+            }
+            // join the added astral members into intervals and merge them once
+            Arrays.sort(added, 0, n);
+            final int[] intervals = new int[n << 1];
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                if (m > 0 && added[i] <= intervals[m - 1] + 1) {
+                    intervals[m - 1] = added[i];
                 } else {
-                    expression
-                            .append(toRegexInterpretable(chars[rangeStartIndex]))
-                            .append(HYPHEN)
-                            .append(toRegexInterpretable(chars[curIndex]));
+                    intervals[m++] = added[i];
+                    intervals[m++] = added[i];
                 }
-                // Reset range starting back to initial
-                rangeStartIndex = -1;
-                isInRange = false;
-            } else {
-                expression.append(toRegexInterpretable(chars[curIndex]));
             }
+            final int[] astral = m == 0 ? set.astral : merge(set.astral, Arrays.copyOf(intervals, m));
+            return new SetExpression(pages, astral, NO_HINTS, false);
         }
 
-        // Now we can append the unicode char classes if the user specified any.
-        if (unicodeClasses.size() > 0) {
-            for (String klass : unicodeClasses) expression.append(klass);
+    }
+
+    /**
+     * One way to write the codepoints of a positive set, either as a class
+     * or as a complemented class. Known classes that are subsets of the set
+     * replace their ranges greedily, the one that saves the most characters
+     * first.
+     */
+    private static final class Form {
+
+        private final boolean complemented;
+        private final boolean folded;
+        private final StringBuilder tokens = new StringBuilder();
+        private SetExpression listing;
+        private Shorthand only; // set if exactly one known class was used
+        private int runs; // encoded length of the listing, -1 if not measured yet
+
+        private Form(final SetExpression set, final long[] hints, final boolean complemented, final boolean folded) {
+
+            // a folded set is closed, so the engine folds the smallest
+            // member of each orbit back into the whole orbit.
+            this.complemented = complemented;
+            this.folded = folded;
+            this.listing = folded ? andNot(set, CaseFolding.NON_MINIMAL, false) : set;
+
+            // a known class is folded by the engine as well. So, it's
+            // only a candidate if its folded form is part of the set.
+            final List<Shorthand> candidates = new ArrayList<>();
+            for (final Shorthand shorthand : Shorthand.TABLE) {
+                final Shorthand candidate = folded ? shorthand.folded() : shorthand;
+                if (candidate.set.isSubsetOf(set)) candidates.add(candidate);
+            }
+            for (int hint = 0; hint < SCRIPT_CLASSES.length; hint++) {
+                // a class that was added is tried in both polarities, the
+                // complement of a set with \p{Greek} may be exactly \P{Greek}
+                if ((hints[hint >>> 6] & (1L << hint)) == 0 && (hints[hint >>> 6] & (1L << (hint ^ 1))) == 0) {
+                    continue;
+                }
+                final SetExpression klass = folded ? CaseFolding.closure(scriptClass(hint)) : scriptClass(hint);
+                if (klass.isSubsetOf(set)) {
+                    final String token = Literals.unicodeScriptLiteral(SCRIPTS[hint >>> 1], (hint & 1) == 1)
+                            .toRegex().toString();
+                    candidates.add(new Shorthand(token, klass, true));
+                }
+            }
+
+            // the listing is measured only when it's needed
+            runs = candidates.isEmpty() ? -1 : listing.appendRuns(null, Integer.MAX_VALUE);
+            while (!candidates.isEmpty()) {
+                Shorthand best = null;
+                SetExpression bestListing = null;
+                int bestRuns = 0, bestSaving = 0;
+                for (final Shorthand candidate : candidates) {
+                    final SetExpression remaining = andNot(listing, candidate.set, false);
+                    // runs that start after the class and the gap next to it are
+                    // the same in both sets, so only the runs before are measured.
+                    final int before = candidate.last + 2;
+                    final int remainingRuns = runs - listing.appendRuns(null, before)
+                            + remaining.appendRuns(null, before);
+                    final int saving = runs - remainingRuns - candidate.token.length();
+                    if (saving > bestSaving) {
+                        best = candidate;
+                        bestListing = remaining;
+                        bestRuns = remainingRuns;
+                        bestSaving = saving;
+                    }
+                }
+                if (best == null) break;
+                candidates.remove(best);
+                only = tokens.length() == 0 ? best : null;
+                tokens.append(best.token);
+                listing = bestListing;
+                runs = bestRuns;
+            }
+
+        }
+
+        private boolean isShorthand() {
+            return !complemented && only != null && listing.isEmpty();
         }
 
-        return expression.append(CLOSE_SQUARE_BRACKET);
+        private int singleton() {
+            // a folded singleton stays in brackets. RE2J folds literals with
+            // other tables than classes, the orbits are checked for classes.
+            if (complemented || folded || tokens.length() != 0) return -1;
+            return listing.singleton(listing.nextSetBit(0));
+        }
+
+        private int length() {
+            if (isShorthand()) return only.bare ? only.token.length() : only.token.length() + 2;
+            final int singleton = singleton();
+            if (singleton != -1) return build().length(); // a single char, cheap to encode
+            if (runs == -1) runs = listing.appendRuns(null, Integer.MAX_VALUE);
+            return runs + tokens.length() + (complemented ? 3 : 2);
+        }
+
+        private StringBuilder build() {
+            // return only the known class if the set is exactly that class
+            if (isShorthand()) {
+                if (only.bare) return new StringBuilder(only.token);
+                return new StringBuilder().append(OPEN_SQUARE_BRACKET).append(only.token).append(CLOSE_SQUARE_BRACKET);
+            }
+            // avoid creating a set expression. instead just escape the sequence.
+            // [a] => a (only if its not negated)
+            final int singleton = singleton();
+            if (singleton != -1) {
+                return appendSetLiteral(new StringBuilder(), singleton);
+            }
+            // we use a string-builder to construct the set expression iteratively.
+            final StringBuilder expression = new StringBuilder(Math.max(runs, 16) + tokens.length() + 3);
+            expression.append(OPEN_SQUARE_BRACKET); // open bracket
+            if (complemented) expression.append(CARAT); // append carat if negated
+            listing.appendRuns(expression, Integer.MAX_VALUE);
+            expression.append(tokens); // known classes go after the ranges
+            return expression.append(CLOSE_SQUARE_BRACKET);
+        }
 
     }
 
     /**
-     * This function looks at a codepoint and normalizes the character
-     * to be able to interpretable by the regex engine.
-     *
-     * @param codepoint hex
-     * @return normalized string
-     */
-    private String toRegexInterpretable(final int codepoint) {
-
-        // if the codepoint is a control character then represent them
-        // as hexadecimal values in the regex. in here we can escape
-        // sequences like \a \t \n \v \f \r
-        //
-        // Invariant: (codePoint >= 0x00 && codePoint <= 0x1F) || (codePoint >= 0x7F && codePoint <= 0x9F);
-        //
-        if (Character.isISOControl(codepoint)) {
-            // RE2 only accepts \x00 style. It does not allow \x0
-            // syntax. So, below formatter formats a codepoint to
-            // its 2-digit hex value.
-            return String.format("\\x%02X", codepoint);
-        }
-
-        // if it's a supplementary unicode character we execute this block.
-        // RE2J regex does not support surrogate pairs inside sets. So, RE2J
-        // supports \x{10FFFF} style syntax in expressions.
-        //
-        // Invariant: codepoint >= 0x010000 && codepoint <= 0x10FFFF
-        //
-        if (Character.isSupplementaryCodePoint(codepoint)) {
-            return String.format("\\x{%s}", Integer.toHexString(codepoint));
-        }
-
-        // if it's bmp codepoint (such codepoints can be stored in
-        // single 16bit char in java) and it's a set-restricted
-        // then just escape it with a backslash. Note that this only
-        // returns escaped characters.
-        //
-        if (Character.isBmpCodePoint(codepoint)) {
-            final String c = Character.toString((char) codepoint);
-            if (SET_RESTRICTED.matches(c)) {
-                return BACKSLASH + c;
+     * A known class that RE2 can express with a short syntax. The token
+     * is what's written inside a set. A bare token can also be used
+     * outside of the brackets.
+     */
+    private static final class Shorthand {
+
+        // Perl classes and the ascii POSIX classes, exactly as RE2 defines them.
+        // [:digit:] and [:word:] are not listed since \d and \w are shorter.
+        private static final Shorthand[] TABLE;
+
+        static {
+            final Shorthand digit = new Shorthand("\\d", fromIntervals(new int[]{'0', '9'}), true);
+            final Shorthand space = new Shorthand("\\s", fromIntervals(new int[]{'\t', '\n', '\f', '\r', ' ', ' '}), true);
+            final Shorthand word = new Shorthand("\\w", fromIntervals(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'}), true);
+            TABLE = new Shorthand[]{
+                    digit, space, word,
+                    new Shorthand("\\D", digit.set.complement(), true),
+                    new Shorthand("\\S", space.set.complement(), true),
+                    new Shorthand("\\W", word.set.complement(), true),
+                    posix("alnum", '0', '9', 'A', 'Z', 'a', 'z'),
+                    posix("alpha", 'A', 'Z', 'a', 'z'),
+                    posix("ascii", 0x00, 0x7F),
+                    posix("blank", '\t', '\t', ' ', ' '),
+                    posix("cntrl", 0x00, 0x1F, 0x7F, 0x7F),
+                    posix("graph", '!', '~'),
+                    posix("lower", 'a', 'z'),
+                    posix("print", ' ', '~'),
+                    posix("punct", '!', '/', ':', '@', '[', '`', '{', '~'),
+                    posix("space", '\t', '\r', ' ', ' '),
+                    posix("upper", 'A', 'Z'),
+                    posix("xdigit", '0', '9', 'A', 'F', 'a', 'f'),
+            };
+        }
+
+        private final String token;
+        private final SetExpression set;
+        private final boolean bare;
+        private final int last; // the largest codepoint of the class
+        private volatile Shorthand folded; // same token with the case folded class
+
+        private Shorthand(final String token, final SetExpression set, final boolean bare) {
+            this.token = token;
+            this.set = set;
+            this.bare = bare;
+            this.last = set.astral.length > 0 ? set.astral[set.astral.length - 1] : set.lastSetBit();
+        }
+
+        /**
+         * Returns the same token with its class closed under case folding.
+         * That's what the class matches in a case-insensitive expression.
+         */
+        private Shorthand folded() {
+            Shorthand result = folded;
+            if (result == null) {
+                // Races are benign, the instances are equal.
+                folded = result = new Shorthand(token, CaseFolding.closure(set), bare);
             }
+            return result;
         }
 
-        // Else we just represent as it is. Also, note that the same function
-        // is being used to create set range elements. RE2 accepts syntax like
-        // \xFF-\x{FFFF} or a-\x{FFFF}. So either way it's fine.
-        //
-        return Character.toString(((char) codepoint));
+        private static Shorthand posix(final String name, final int... intervals) {
+            return new Shorthand("[:" + name + ":]", fromIntervals(intervals), false);
+        }
 
     }
 
@@ -1,181 +1,1470 @@
 package dev.yasint.RexPlainDSL.complex;
 
 import dev.yasint.RexPlainDSL.api.Expression;
+import dev.yasint.RexPlainDSL.exceptions.GenericException;
+import dev.yasint.RexPlainDSL.unicode.UnicodeTables;
 import dev.yasint.RexPlainDSL.util.Common;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static dev.yasint.RexPlainDSL.api.MetaCharacters.*;
+import static dev.yasint.RexPlainDSL.dsl.Repetition.MAX_REPETITION;
 
 /**
  * Synthesis :: String minimization
+ * <p>
+ * The trie is keyed by unicode codepoints and stored in a few parallel
+ * primitive arrays indexed by node id. Node n is reached through the
+ * codepoint keys[n], its first child is first[n] and its next sibling is
+ * next[n]. Siblings are kept in ascending codepoint order. The root is
+ * node 0, it is never a child or a sibling so 0 also means none. A node
+ * costs 16 bytes and a bit, no matter how many words share it.
+ * <p>
+ * Siblings whose subtrees are identical are written as one character
+ * class followed by the shared tail, at every level of the trie. i.e.
+ * cat,bat,hat,rat => [bchr]at and the leaves of jun,jul => ju[ln]
+ * Chains of a repeated unit are written with a counted quantifier when
+ * that's shorter. i.e. a,aa,aaa,aaaa => a{1,4}
+ * <p>
+ * The expressions of the nodes of the first two levels are cached. An
+ * insertion or a removal only clears the cache of the nodes on its path,
+ * so rendering again reuses every other second-level subtree. A removal drops
+ * the nodes that no longer lead to a word, their ids are reused by later
+ * insertions. Every change of the words bumps a version, so a caller can
+ * tell from a {@link Revision} whether the expression has to be compiled
+ * again. Insertions, removals and renderings can be called from many
+ * threads, they're guarded by a read-write lock.
+ * <p>
+ * Large word lists are split by their leading codepoint and built into
+ * independent sub-tries on a fork-join pool, which are then attached under
+ * the root. The stale cached subtrees of a large trie are rendered in
+ * parallel as well.
+ * <p>
+ * A trie can be written to a file as its flat node arrays and mapped back
+ * at startup without building it again. A mapped trie is read-only, it's
+ * rendered and matched from the file's pages instead of the heap.
+ * <p>
+ * A trie that folds case stores every codepoint as the smallest member of
+ * its case orbit, the same member a folded set writes. So the spellings of
+ * a word share one path, i.e. jan,Jan,JAN => JAN. Its expression only
+ * matches them all when it's compiled with CASE_INSENSITIVE or used inside
+ * a case insensitive group.
  */
 public class TrieExpression implements Expression {
 
-    private static final String NULL_KEY = ""; // Null key represents an empty string
-    private final Node root = new Node(); // Initial node of the trie. (null - children)
+    private static final int ROOT = 0;
+    private static final int NONE = 0; // the root is nobody's child or sibling
+    private static final int LEAF = 0; // subtree number of every leaf
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int ALTERNATION_GROUP = 1, OPTIONAL_GROUP = 2, OPTIONAL = 4, STARTED = 8; // frame flags
+    private static final int FRAME = 6; // node, cursor, leaf count, flags, start offset, depth
+    // Nodes up to this depth cache their expression, so a small change only
+    // renders a few second-level subtrees again. The cached text is held once
+    // per level, deeper caches would hold it many times over, i.e. a chain of
+    // optional words a(?:a(?:a?)?)?
+    private static final int CACHED_DEPTH = 2;
+    private static final int PARALLEL_THRESHOLD = 1 << 16; // words to insert or nodes to render
+    private static final long MAPPED_CHUNK = 1L << 30; // bytes of a word file mapped at once
+    private static final int MAX_PERIOD = 8; // longest repeated unit that is quantified
+    private static final int IMAGE_MAGIC = 0x52585452; // "RXTR" in front of a trie file
+    private static final int IMAGE_VERSION = 1;
+    private static final int IMAGE_HEADER = 16; // magic, version, node count, options
+    private static final int IMAGE_FOLDED = 1; // option bit of a trie that folds case
 
-    public TrieExpression() { /*available for testing*/ }
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int[] keys = new int[INITIAL_CAPACITY]; // codepoint of the edge into node n
+    private int[] first = new int[INITIAL_CAPACITY]; // smallest child of node n
+    private int[] next = new int[INITIAL_CAPACITY]; // next larger sibling of node n
+    private long[] terminal = new long[INITIAL_CAPACITY >>> 6]; // bit n is set when a word ends at node n
+    // Next larger sibling of node n with an identical subtree, or NONE. It's
+    // stored inverted (~) when a smaller sibling has the same subtree, such
+    // a twin is written by the smallest one. Filled in before rendering
+    private int[] twins = new int[INITIAL_CAPACITY];
+    // Cached expression of node n, null when it's stale or too deep. Strings are
+    // immutable, so a cache entry written by one reader is safe for the others
+    private String[] rendered = new String[INITIAL_CAPACITY];
+    private int size = 1; // number of nodes, the root and the removed ones included
+    private int free = NONE; // removed nodes chained through next, reused first
+    private int freed = 0; // number of removed nodes
+    private long version = 0; // bumped whenever the words change
+    // Node arrays mapped from a file, null unless the trie was mapped. Then
+    // the arrays above are left out and only the render caches are used
+    private final Image image;
+    private final boolean foldCase; // whether codepoints are stored case folded
+
+    public TrieExpression() {
+        this(false); /*available for testing*/
+    }
 
     /**
-     * Inserts one word into the trie. O(N) complexity
+     * Creates an empty trie. A trie that folds case stores the words in
+     * their canonical case folded form, so words that only differ in case
+     * are stored once.
      *
-     * @param word string input
+     * @param foldCase whether to fold the case of the words
      */
-    public void insert(final String word) {
-        Node current = this.root;
-        for (int i = 0; i < word.length(); ++i) {
-            final String c = Character.toString(word.charAt(i));
-            if (!current.containsKey(c)) {
-                current.put(c, new Node());
+    public TrieExpression(final boolean foldCase) {
+        this.image = null;
+        this.foldCase = foldCase;
+    }
+
+    /**
+     * Creates a read-only trie on mapped node arrays. The nodes are
+     * numbered breadth-first, so the nodes of the cached levels come
+     * first and the render cache only needs room for them.
+     */
+    private TrieExpression(final Image image, final boolean foldCase) {
+        this.image = image;
+        this.foldCase = foldCase;
+        this.keys = this.first = this.next = null;
+        this.terminal = null;
+        this.size = image.nodes;
+        this.twins = new int[image.nodes];
+        int level = 0, end = 1; // nodes [level, end) are at the current depth
+        for (int depth = 0; depth < CACHED_DEPTH; depth++) {
+            int deeper = end;
+            for (int n = level; n < end; n++) {
+                for (int c = firstChild(n); c != NONE; c = nextSibling(c)) deeper = c + 1;
             }
-            current = current.get(c);
+            level = end;
+            end = deeper;
+        }
+        this.rendered = new String[end];
+    }
+
+    /**
+     * Inserts one word into the trie. The word is walked by codepoint,
+     * so a surrogate pair is a single edge. O(N * K) complexity where
+     * K is the largest number of siblings on the path
+     *
+     * @param word string input
+     * @return true if the word wasn't in the trie yet
+     */
+    public boolean insert(final String word) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return add(word);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes one word from the trie. The nodes that no longer lead to
+     * any word are unlinked and reused by later insertions. Only the
+     * cached expressions on the word's path are cleared.
+     *
+     * @param word string input
+     * @return true if the word was in the trie
+     */
+    public boolean remove(final String word) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return delete(word);
+        } finally {
+            lock.writeLock().unlock();
         }
-        // [ "": null ] as terminator
-        current.put(NULL_KEY, null);
     }
 
     /**
-     * Inserts a collection of words into the trie. O(N)
+     * Removes a collection of words from the trie.
      *
      * @param words string inputs
+     * @return true if any of the words was in the trie
      */
-    public void insertAll(final Collection<String> words) {
-        for (String word : words)
-            insert(word);
+    public boolean removeAll(final Collection<String> words) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            boolean changed = false;
+            for (final String word : words)
+                changed |= delete(word);
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    @Override
-    public StringBuilder toRegex() {
-        return this.root.toRegex();
+    /**
+     * Applies a change of the word list at once, so no rendering sees it
+     * half done. The removals are applied first, a word that is in both
+     * collections stays in the trie.
+     *
+     * @param insertions words to insert
+     * @param removals   words to remove
+     * @return true if the words of the trie changed
+     */
+    public boolean update(final Collection<String> insertions, final Collection<String> removals) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            final long before = version;
+            for (final String word : removals)
+                delete(word);
+            for (final String word : insertions)
+                add(word);
+            return version != before;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    private static final class Node implements Expression {
+    /**
+     * Tells whether the words are stored case folded. Then the expression
+     * has to be matched case insensitively.
+     *
+     * @return true if the trie folds case
+     */
+    public boolean foldsCase() {
+        return foldCase;
+    }
 
-        private final Map<String, Node> nodes;
-        private final List<String> alternations;
-        private final List<String> charClasses;
+    /**
+     * Returns the version of the words, it's bumped by every insertion or
+     * removal that changes them.
+     *
+     * @return current version
+     */
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        private boolean hasOptionals = false;
-        private boolean hasCharacterClasses = false;
+    /**
+     * Renders the trie unless it's still at the version of a previous
+     * revision, and tells whether the expression differs from that one.
+     * Only the first-level subtrees changed since they were last rendered
+     * are written again. Words that were removed and inserted again leave
+     * the expression as it was, so the caller can skip compiling it.
+     *
+     * @param previous last revision the caller has seen, or null
+     * @return current revision
+     */
+    public Revision revision(final Revision previous) {
+        lock.readLock().lock();
+        try {
+            if (previous != null && previous.version == version) {
+                return new Revision(version, previous.expression, false);
+            }
+            final String expression = regex().toString();
+            return new Revision(version, expression, previous == null || !previous.expression.equals(expression));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        private Node() {
-            this.nodes = new TreeMap<>();
-            this.alternations = new ArrayList<>();
-            this.charClasses = new ArrayList<>();
+    /**
+     * Inserts a collection of words into the trie. O(N) Large collections
+     * are inserted in parallel on the common fork-join pool.
+     *
+     * @param words string inputs
+     */
+    public void insertAll(final Collection<String> words) {
+        checkWritable();
+        if (words.size() >= PARALLEL_THRESHOLD) {
+            insertAll(words, ForkJoinPool.commonPool());
+            return;
         }
+        lock.writeLock().lock();
+        try {
+            for (String word : words)
+                add(word);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        /**
-         * Checks whether a given key is present in this
-         * leaf node of the trie.
-         *
-         * @param _char rune / character
-         * @return true if present
-         */
-        private boolean containsKey(final String _char) {
-            return this.nodes.containsKey(_char);
+    /**
+     * Inserts a collection of words into the trie in parallel. The words
+     * are grouped by their leading codepoint and every group is built into
+     * an independent sub-trie by its own task. The sub-tries are attached
+     * under the root once they're all built, the trie is only locked while
+     * they're being attached.
+     *
+     * @param words string inputs
+     * @param pool  fork-join pool to build the sub-tries on
+     */
+    public void insertAll(final Collection<String> words, final ForkJoinPool pool) {
+        checkWritable();
+
+        final Map<Integer, List<String>> groups = new TreeMap<>();
+        boolean empty = false;
+        for (final String word : words) {
+            if (word.isEmpty()) empty = true;
+            else groups.computeIfAbsent(fold(word.codePointAt(0)), k -> new ArrayList<>()).add(word);
         }
 
-        /**
-         * Inserts a given key and a child node to this
-         * leaf node's children {@code nodes}
-         *
-         * @param _char key / rune / character
-         * @param node  child node
-         */
-        private void put(final String _char, final Node node) {
-            this.nodes.put(_char, node);
+        final List<ForkJoinTask<TrieExpression>> tasks = new ArrayList<>(groups.size());
+        for (final List<String> group : groups.values()) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                final TrieExpression subTrie = new TrieExpression(foldCase);
+                for (final String word : group) subTrie.add(word);
+                return subTrie;
+            }));
         }
+        pool.invoke(ForkJoinTask.adapt(() -> {
+            ForkJoinTask.invokeAll(tasks);
+        }));
 
-        /**
-         * Retrieves a child node from this leaf node of trie
-         * when given the key.
-         *
-         * @param _char key of the child node
-         * @return mapping child node
-         */
-        private Node get(final String _char) {
-            return this.nodes.get(_char);
-        }
-
-        private void appendStringAlternations() {
-            // for each leaf node of this node (adjacent nodes)
-            for (Map.Entry<String, Node> entry : this.nodes.entrySet()) {
-                // escape any special regular expression constructs is present
-                final String escaped = Common.asRegexLiteral(entry.getKey());
-                // if it's not a final state
-                if (entry.getValue() != null) {
-                    // get the leaf node's expression (depth-first check)
-                    final StringBuilder subExpression = entry.getValue().toRegex();
-                    if (subExpression != null) {
-                        // concat(a,b)
-                        alternations.add(escaped + subExpression.toString());
+        lock.writeLock().lock();
+        try {
+            boolean changed = false;
+            if (empty && !isTerminal(ROOT)) { // the root is a final state
+                terminal[0] |= 1L;
+                changed = true;
+            }
+            for (final ForkJoinTask<TrieExpression> task : tasks) changed |= graft(task.join());
+            if (changed) {
+                rendered[ROOT] = null;
+                version++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+    }
+
+    /**
+     * Inserts every line of a UTF-8 text file into the trie. The file is
+     * memory mapped and decoded straight into trie nodes, so no String is
+     * created for a line. Lines end with \n, \r or \r\n, blank lines and
+     * a leading byte order mark are skipped and repeated lines are only
+     * stored once.
+     * <p>
+     * The lines are built into a sub-trie first, which is attached under
+     * the root once the whole file is decoded. So a file that isn't valid
+     * UTF-8 leaves the trie as it was, and the trie is only locked while
+     * the sub-trie is being attached.
+     *
+     * @param path word list, one word per line
+     * @throws IOException if the file can't be read or isn't valid UTF-8
+     */
+    public void insertFrom(final Path path) throws IOException {
+        checkWritable();
+        final TrieExpression subTrie = new TrieExpression(foldCase);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long length = channel.size();
+            int[] line = new int[64]; // codepoints of the line read so far
+            int depth = 0;
+            int codepoint = 0, pending = 0, minimum = 0; // UTF-8 sequence being decoded
+            for (long position = 0; position < length; position += MAPPED_CHUNK) {
+                final MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_CHUNK, length - position)
+                );
+                final int limit = buffer.limit();
+                int i = position == 0 && startsWithByteOrderMark(buffer) ? 3 : 0;
+                for (; i < limit; i++) {
+                    final int b = buffer.get(i) & 0xFF;
+                    if (pending > 0) {
+                        if ((b & 0xC0) != 0x80) throw new MalformedInputException(1);
+                        codepoint = codepoint << 6 | (b & 0x3F);
+                        if (--pending > 0) continue;
+                        // overlong encodings, surrogates and codepoints above U+10FFFF
+                        if (codepoint < minimum || !Character.isValidCodePoint(codepoint)
+                                || Character.isSurrogate((char) codepoint) && codepoint < 0x10000) {
+                            throw new MalformedInputException(4);
+                        }
+                    } else if (b < 0x80) {
+                        if (b == '\n' || b == '\r') { // \r\n leaves a blank line behind
+                            subTrie.addLine(line, depth);
+                            depth = 0;
+                            continue;
+                        }
+                        codepoint = b;
+                    } else if (b >= 0xC2 && b <= 0xF4) {
+                        pending = b < 0xE0 ? 1 : b < 0xF0 ? 2 : 3;
+                        minimum = pending == 1 ? 0x80 : pending == 2 ? 0x800 : 0x10000;
+                        codepoint = b & (0x3F >> pending);
+                        continue;
                     } else {
-                        // or this a character class: jun,jul => ju[nl]
-                        charClasses.add(escaped);
+                        throw new MalformedInputException(1);
                     }
-                } else {
-                    this.hasOptionals = true;
+                    if (depth == line.length) line = Arrays.copyOf(line, depth << 1);
+                    line[depth++] = fold(codepoint);
                 }
             }
+            if (pending > 0) throw new MalformedInputException(1);
+            subTrie.addLine(line, depth); // last line without \n
         }
 
-        private void appendCharacterClasses() {
-            this.hasCharacterClasses = alternations.isEmpty();
-            if (charClasses.size() > 0) {
-                if (charClasses.size() == 1) {
-                    alternations.add(charClasses.get(0)); // [a] => a
-                } else {
-                    final StringBuilder set = new StringBuilder();
-                    set.append(OPEN_SQUARE_BRACKET);
-                    for (final String it : charClasses)
-                        set.append(it);
-                    set.append(CLOSE_SQUARE_BRACKET);
-                    alternations.add(set.toString()); // [abc]
+        lock.writeLock().lock();
+        try {
+            if (copy(subTrie, ROOT, ROOT, 0)) version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Walks a decoded line down the trie and marks its final state, unless
+     * it's blank. The codepoints are folded already.
+     */
+    private void addLine(final int[] line, final int length) {
+        if (length == 0) return;
+        int current = ROOT;
+        for (int i = 0; i < length; i++) current = child(current, line[i]);
+        terminal[current >>> 6] |= 1L << current;
+    }
+
+    private static boolean startsWithByteOrderMark(final MappedByteBuffer buffer) {
+        return buffer.limit() >= 3 && (buffer.get(0) & 0xFF) == 0xEF
+                && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF;
+    }
+
+    /**
+     * Writes the trie to a file that {@link #mapFrom(Path)} maps back. The
+     * nodes are numbered breadth-first and written behind a header as flat
+     * little-endian arrays: the keys, first children and next siblings as
+     * ints and the final states as a bitmap of longs. Removed nodes are
+     * left out. Whether the trie folds case is kept in the header.
+     *
+     * @param path file to write, replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public void writeTo(final Path path) throws IOException {
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final int nodes = nodeCount();
+            final long length = imageLength(nodes);
+            if (length > Integer.MAX_VALUE) {
+                throw new GenericException("trie is too large to map: " + nodes + " nodes");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).putInt(0, IMAGE_MAGIC).putInt(4, IMAGE_VERSION).putInt(8, nodes)
+                    .putInt(12, foldCase ? IMAGE_FOLDED : 0);
+            final Image image = new Image(buffer, nodes);
+            final int[] order = new int[nodes]; // node of each image node
+            int count = 1;
+            for (int n = 0; n < count; n++) {
+                final int node = order[n];
+                image.keys.put(n, key(node));
+                image.first.put(n, firstChild(node) == NONE ? NONE : count);
+                if (isTerminal(node)) image.terminal.put(n >>> 6, image.terminal.get(n >>> 6) | 1L << n);
+                for (int c = firstChild(node); c != NONE; c = nextSibling(c)) {
+                    order[count] = c;
+                    image.next.put(count, nextSibling(c) == NONE ? NONE : count + 1);
+                    count++;
                 }
             }
+            buffer.force();
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        @Override
-        public StringBuilder toRegex() {
+    /**
+     * Maps a file written by {@link #writeTo(Path)} as a read-only trie.
+     * The nodes are read from the mapped pages, so nothing is rebuilt and
+     * the heap only holds an int per node and the cached expressions for
+     * rendering. The file must not change while it's mapped.
+     *
+     * @param path trie file
+     * @return mapped trie
+     * @throws IOException if the file can't be read or isn't a trie file
+     */
+    public static TrieExpression mapFrom(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long length = channel.size();
+            if (length >= IMAGE_HEADER && length <= Integer.MAX_VALUE) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                final int nodes = buffer.getInt(8);
+                if (buffer.getInt(0) == IMAGE_MAGIC && buffer.getInt(4) == IMAGE_VERSION
+                        && nodes > 0 && imageLength(nodes) == length) {
+                    return new TrieExpression(new Image(buffer, nodes), (buffer.getInt(12) & IMAGE_FOLDED) != 0);
+                }
+            }
+            throw new IOException("not a trie file: " + path);
+        }
+    }
 
-            if (this.nodes.containsKey(NULL_KEY) && this.nodes.size() == 1) {
-                return null; // Terminate; final state, means this is an null edge
+    /**
+     * Checks whether a word is in the trie, without rendering it.
+     *
+     * @param word string input
+     * @return true if the word was inserted
+     */
+    public boolean contains(final CharSequence word) {
+        lock.readLock().lock();
+        try {
+            int current = ROOT;
+            for (int i = 0; i < word.length(); ) {
+                final int codepoint = Character.codePointAt(word, i);
+                current = find(current, fold(codepoint));
+                if (current == NONE) return false;
+                i += Character.charCount(codepoint);
             }
-            this.appendStringAlternations();
-            this.appendCharacterClasses();
+            return isTerminal(current);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long imageLength(final int nodes) {
+        return terminalOffset(nodes) + 8L * ((nodes + 63) >>> 6);
+    }
+
+    private static int terminalOffset(final int nodes) {
+        return (int) ((IMAGE_HEADER + 12L * nodes + 7) & ~7L); // longs are aligned
+    }
+
+    @Override
+    public StringBuilder toRegex() {
+        lock.readLock().lock();
+        try {
+            return regex();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Renders the trie from the cached expressions that are still valid.
+     * The caller holds the read lock.
+     */
+    private StringBuilder regex() {
+        if (firstChild(ROOT) == NONE) {
+            return new StringBuilder().append(PAREN_OPEN).append(QUESTION_MARK)
+                    .append(COLON).append(PAREN_CLOSE); // nothing or only "" was inserted
+        }
+        final String cached = rendered[ROOT];
+        if (cached != null) return new StringBuilder(cached);
+        renderSubtrees();
+        return render(ROOT, 0);
+    }
+
+    /**
+     * Splits the trie into smaller tries that hold the same words between
+     * them and renders each one. The RE2 program size of a subtree is
+     * estimated as one instruction per edge, one per extra alternative and
+     * one per word ending on an inner node. Siblings are packed in key
+     * order into a shard until it's full, and a subtree that doesn't fit
+     * into one is split the same way below its node. Every shard keeps the
+     * path from the root, i.e. app(?:eal|le) and app(?:lication|ly)
+     *
+     * @param maxProgramSize largest estimated program size of a shard
+     * @return expression of each shard, just one when the trie fits
+     */
+    public List<String> toShards(final int maxProgramSize) {
+        if (maxProgramSize < 1) {
+            throw new GenericException("max program size must be positive");
+        }
+        final List<TrieExpression> shards = new ArrayList<>();
+        lock.readLock().lock();
+        try {
 
-            final StringBuilder expression = new StringBuilder();
+            // pre-order, so that children come after their parent
+            final int[] order = new int[size], parent = new int[size], cost = new int[size];
+            int count = 0, top = 0;
+            final int[] stack = new int[size];
+            stack[top++] = ROOT;
+            while (top > 0) {
+                final int node = stack[--top];
+                order[count++] = node;
+                for (int c = firstChild(node); c != NONE; c = nextSibling(c)) {
+                    parent[c] = node;
+                    stack[top++] = c;
+                }
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                final int node = order[i];
+                int children = 0;
+                for (int c = firstChild(node); c != NONE; c = nextSibling(c)) {
+                    cost[node] += 1 + cost[c];
+                    children++;
+                }
+                if (children > 1) cost[node] += children - 1; // alternation
+                if (children > 0 && isTerminal(node)) cost[node]++; // optional
+            }
+            if (cost[ROOT] <= maxProgramSize) return Collections.singletonList(toRegex().toString());
 
-            if (alternations.size() == 1) {
-                expression.append(alternations.get(0));
-            } else {
-                expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
-                for (int i = 0; i < alternations.size(); i++) {
-                    expression.append(alternations.get(i));
-                    if (i != alternations.size() - 1) {
-                        expression.append(ALTERNATION);
+            // stack is reused for the nodes left to split
+            int[] group = new int[16];
+            stack[top++] = ROOT;
+            while (top > 0) {
+                final int node = stack[--top];
+                boolean terminal = isTerminal(node);
+                int members = 0, total = 0;
+                for (int c = firstChild(node); c != NONE; c = nextSibling(c)) {
+                    if (1 + cost[c] > maxProgramSize && firstChild(c) != NONE) {
+                        stack[top++] = c;
+                        continue;
+                    }
+                    if (members > 0 && total + 1 + cost[c] > maxProgramSize) {
+                        shards.add(shard(node, terminal, group, members, parent));
+                        terminal = false;
+                        members = total = 0;
                     }
+                    if (members == group.length) group = Arrays.copyOf(group, members << 1);
+                    group[members++] = c;
+                    total += 1 + cost[c];
                 }
-                expression.append(PAREN_CLOSE);
+                if (members > 0 || terminal) shards.add(shard(node, terminal, group, members, parent));
+            }
+
+        } finally {
+            lock.readLock().unlock();
+        }
+        final List<String> expressions = new ArrayList<>(shards.size());
+        for (final TrieExpression shard : shards) expressions.add(shard.toRegex().toString());
+        return expressions;
+    }
+
+    /**
+     * Copies the path to a node and some of its subtrees into a new trie.
+     * The caller holds the read lock.
+     *
+     * @param node     node the shard is split at
+     * @param terminal whether the word ending at the node goes into the shard
+     * @param children children to copy with their subtrees
+     * @param count    number of children
+     * @param parent   parent of every node
+     * @return shard
+     */
+    private TrieExpression shard(final int node, final boolean terminal, final int[] children,
+                                 final int count, final int[] parent) {
+        final TrieExpression shard = new TrieExpression(foldCase);
+        int depth = 0;
+        for (int n = node; n != ROOT; n = parent[n]) depth++;
+        final int[] path = new int[depth];
+        for (int n = node; n != ROOT; n = parent[n]) path[--depth] = n;
+        int at = ROOT;
+        for (final int n : path) at = shard.child(at, key(n));
+        if (terminal) shard.terminal[at >>> 6] |= 1L << at;
+        for (int i = 0; i < count; i++) {
+            shard.copy(this, children[i], shard.child(at, key(children[i])), path.length + 1);
+        }
+        return shard;
+    }
+
+    /**
+     * Renders the stale subtrees of the cached levels, deepest first, so
+     * every node is written from the cached expressions of its children.
+     * A stale node's parent is stale as well, so only stale nodes are
+     * searched. A large trie renders each level on the common fork-join
+     * pool. The caller holds the read lock for the whole time, so the
+     * tasks don't need it.
+     */
+    private void renderSubtrees() {
+        final List<List<Integer>> levels = new ArrayList<>(); // stale nodes with edges per depth
+        List<Integer> parents = Collections.singletonList(ROOT);
+        for (int depth = 1; depth <= CACHED_DEPTH && !parents.isEmpty(); depth++) {
+            final List<Integer> stale = new ArrayList<>();
+            for (final int parent : parents) {
+                for (int c = firstChild(parent); c != NONE; c = nextSibling(c)) {
+                    if (firstChild(c) != NONE && rendered[c] == null) stale.add(c);
+                }
+            }
+            levels.add(stale);
+            parents = stale;
+        }
+        for (int depth = levels.size(); depth > 0; depth--) {
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            final int level = depth;
+            for (final int node : levels.get(depth - 1)) {
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    render(node, level);
+                }));
+            }
+            if (size < PARALLEL_THRESHOLD || tasks.size() < 2) {
+                for (final ForkJoinTask<?> task : tasks) task.invoke();
+                continue;
+            }
+            ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+    }
+
+    /**
+     * Links the children with identical subtrees of a node above the
+     * deepest cached level. Their subtrees are already rendered, and two
+     * subtrees of a trie are identical only if they describe the same
+     * words, so the cached expressions are compared instead of the nodes.
+     */
+    private void linkChildren(final int node) {
+        final Map<String, Integer> numbers = new HashMap<>();
+        int[] children = new int[32]; // pairs of (node, subtree number)
+        int count = 0;
+        for (int c = firstChild(node); c != NONE; c = nextSibling(c)) {
+            if (count * 2 == children.length) children = Arrays.copyOf(children, children.length << 1);
+            children[count * 2] = c;
+            children[count * 2 + 1] = firstChild(c) == NONE ? LEAF : numbers.computeIfAbsent(rendered[c], k -> numbers.size() + 1);
+            count++;
+        }
+        link(children, 0, count);
+    }
+
+    /**
+     * Numbers the subtrees below a node bottom-up and links the siblings
+     * with identical subtrees. Two subtrees get the same number when they
+     * have the same final state and the same edges into subtrees with the
+     * same numbers. The distinct ones are kept in a hash table of their
+     * signatures: final state, edge count and (key, number) per edge.
+     *
+     * @param root node with at least one child
+     */
+    private void classify(final int root) {
+
+        int[] signatures = new int[64];
+        int[] offsets = new int[16]; // offset of subtree number n in signatures, 0 is LEAF
+        int[] hashes = new int[16];
+        int[] table = new int[32]; // subtree numbers, 0 is an empty slot
+        int numbers = 1, used = 2;
+
+        int[] frames = new int[3 * 16]; // node, cursor, values base
+        int[] values = new int[2 * 16]; // pairs of (child, subtree number) of the open frames
+        int frame = 0, top = 0;
+        frames[frame++] = root;
+        frames[frame++] = firstChild(root);
+        frames[frame++] = top;
+
+        while (frame > 0) {
+            final int node = frames[frame - 3];
+            final int cursor = frames[frame - 2];
+            if (cursor != NONE) {
+                frames[frame - 2] = nextSibling(cursor);
+                if (firstChild(cursor) == NONE) {
+                    if (top + 2 > values.length) values = Arrays.copyOf(values, values.length << 1);
+                    values[top++] = cursor;
+                    values[top++] = LEAF;
+                } else {
+                    if (frame + 3 > frames.length) frames = Arrays.copyOf(frames, frames.length << 1);
+                    frames[frame++] = cursor;
+                    frames[frame++] = firstChild(cursor);
+                    frames[frame++] = top;
+                }
+                continue;
+            }
+
+            final int base = frames[frame - 1];
+            final int count = (top - base) >> 1;
+            link(values, base, count);
+            frame -= 3;
+            top = base;
+            if (frame == 0) break; // the root itself has no siblings
+
+            // look the signature up, or add it as a new subtree number
+            final int isFinal = isTerminal(node) ? 1 : 0;
+            int hash = 31 * isFinal + count;
+            for (int i = base; i < base + 2 * count; i += 2) {
+                hash = 31 * (31 * hash + key(values[i])) + values[i + 1];
+            }
+            hash = mix(hash);
+            int slot = hash & (table.length - 1), number;
+            while ((number = table[slot]) != 0) {
+                if (hashes[number] == hash && sameSignature(signatures, offsets[number],
+                        isFinal, values, base, count)) break;
+                slot = (slot + 1) & (table.length - 1);
+            }
+            if (number == 0) {
+                number = numbers++;
+                if (number == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, number << 1);
+                    hashes = Arrays.copyOf(hashes, number << 1);
+                }
+                if (used + 2 + 2 * count > signatures.length) {
+                    signatures = Arrays.copyOf(signatures, Math.max(signatures.length << 1, used + 2 + 2 * count));
+                }
+                offsets[number] = used;
+                hashes[number] = hash;
+                signatures[used++] = isFinal;
+                signatures[used++] = count;
+                for (int i = base; i < base + 2 * count; i += 2) {
+                    signatures[used++] = key(values[i]);
+                    signatures[used++] = values[i + 1];
+                }
+                table[slot] = number;
+                if (numbers * 2 > table.length) table = rehash(table, hashes, numbers);
+            }
+
+            if (top + 2 > values.length) values = Arrays.copyOf(values, values.length << 1);
+            values[top++] = node;
+            values[top++] = number;
+        }
+
+    }
+
+    private boolean sameSignature(final int[] signatures, int offset, final int isFinal,
+                                  final int[] values, final int base, final int count) {
+        if (signatures[offset++] != isFinal || signatures[offset++] != count) return false;
+        for (int i = base; i < base + 2 * count; i += 2) {
+            if (signatures[offset++] != key(values[i]) || signatures[offset++] != values[i + 1]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Spreads a polynomial hash over all bits, subtree numbers are small
+     * and dense so linear probing would run into long clusters otherwise.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ hash >>> 16;
+    }
+
+    private static int[] rehash(final int[] table, final int[] hashes, final int numbers) {
+        final int[] larger = new int[table.length << 1];
+        for (int number = 1; number < numbers; number++) {
+            int slot = hashes[number] & (larger.length - 1);
+            while (larger[slot] != 0) slot = (slot + 1) & (larger.length - 1);
+            larger[slot] = number;
+        }
+        return larger;
+    }
+
+    /**
+     * Links siblings with the same subtree number, each one to the next
+     * larger one. Leaves are left out, they're written as a class anyway.
+     * Renderings only hold the read lock, so several of them may link the
+     * same siblings at once. Every slot is written straight to its final
+     * value and the trie can't change under the read lock, so they write
+     * the same values and the duplicate writes are benign. The same goes
+     * for the cached expressions.
+     *
+     * @param children pairs of (node, subtree number) in key order
+     * @param from     offset of the first pair
+     * @param count    number of pairs
+     */
+    private void link(final int[] children, final int from, final int count) {
+        if (count == 1) {
+            twins[children[from]] = NONE;
+            return;
+        }
+        final long[] order = new long[count]; // subtree number, position
+        int branches = 0;
+        for (int i = 0; i < count; i++) {
+            final int number = children[from + 2 * i + 1];
+            if (number != LEAF) order[branches++] = (long) number << 32 | i;
+        }
+        Arrays.sort(order, 0, branches);
+        for (int i = 0; i < branches; i++) {
+            final int node = children[from + 2 * (int) order[i]];
+            final boolean follows = i > 0 && order[i - 1] >>> 32 == order[i] >>> 32;
+            final int twin = i + 1 < branches && order[i + 1] >>> 32 == order[i] >>> 32
+                    ? children[from + 2 * (int) order[i + 1]] : NONE;
+            twins[node] = follows ? ~twin : twin;
+        }
+    }
+
+    /**
+     * Walks a word down the trie and adds the missing nodes. The cached
+     * expressions on its path are cleared unless the word was there
+     * already. The caller holds the write lock.
+     *
+     * @return true if the word is new
+     */
+    private boolean add(final String word) {
+        int current = ROOT;
+        for (int i = 0; i < word.length(); ) {
+            final int codepoint = word.codePointAt(i);
+            current = child(current, fold(codepoint));
+            i += Character.charCount(codepoint);
+        }
+        if (isTerminal(current)) return false;
+        invalidate(word);
+        return accept(current);
+    }
+
+    /**
+     * Walks a word down the trie and unmarks its final state. The nodes
+     * of its path that don't lead to another word anymore are unlinked,
+     * deepest first. The caller holds the write lock.
+     *
+     * @return true if the word was there
+     */
+    private boolean delete(final String word) {
+        final int[] path = new int[word.length() + 1]; // path[0] is the root
+        int depth = 0;
+        for (int i = 0; i < word.length(); ) {
+            final int codepoint = word.codePointAt(i);
+            final int node = find(path[depth], fold(codepoint));
+            if (node == NONE) return false;
+            path[++depth] = node;
+            i += Character.charCount(codepoint);
+        }
+        final int end = path[depth];
+        if (!isTerminal(end)) return false;
+        invalidate(word);
+        terminal[end >>> 6] &= ~(1L << end);
+        for (; depth > 0 && first[path[depth]] == NONE && !isTerminal(path[depth]); depth--) {
+            unlink(path[depth - 1], path[depth]);
+        }
+        version++;
+        return true;
+    }
+
+    /**
+     * Marks a node as a final state and bumps the version if it wasn't
+     * one. The caller holds the write lock.
+     *
+     * @return true if the node wasn't a final state
+     */
+    private boolean accept(final int node) {
+        if (isTerminal(node)) return false;
+        terminal[node >>> 6] |= 1L << node;
+        version++;
+        return true;
+    }
+
+    /**
+     * Clears the cached expressions of the root and of the nodes on the
+     * path of a word that are shallow enough to have one.
+     */
+    private void invalidate(final String word) {
+        rendered[ROOT] = null;
+        int current = ROOT;
+        for (int i = 0, depth = 0; i < word.length() && depth < CACHED_DEPTH; depth++) {
+            final int codepoint = word.codePointAt(i);
+            current = find(current, fold(codepoint));
+            if (current == NONE) return;
+            rendered[current] = null;
+            i += Character.charCount(codepoint);
+        }
+    }
+
+    /**
+     * Returns the codepoint as it's stored, the smallest member of its
+     * case orbit if the trie folds case.
+     */
+    private int fold(final int codepoint) {
+        return foldCase ? UnicodeTables.caseFold(codepoint) : codepoint;
+    }
+
+    /**
+     * Returns the child of a node that is reached through the given
+     * codepoint, or NONE.
+     */
+    private int find(final int node, final int codepoint) {
+        int sibling = firstChild(node);
+        while (sibling != NONE && key(sibling) < codepoint) sibling = nextSibling(sibling);
+        return sibling != NONE && key(sibling) == codepoint ? sibling : NONE;
+    }
+
+    /**
+     * Unlinks a leaf from its parent and puts it on the free list. Its
+     * cache is cleared and it has no edges or final state, so it can be
+     * reused as a new node as it is.
+     */
+    private void unlink(final int parent, final int node) {
+        if (first[parent] == node) {
+            first[parent] = next[node];
+        } else {
+            int previous = first[parent];
+            while (next[previous] != node) previous = next[previous];
+            next[previous] = next[node];
+        }
+        rendered[node] = null;
+        twins[node] = NONE;
+        next[node] = free;
+        free = node;
+        freed++;
+    }
+
+    /**
+     * Returns the child of a node that is reached through the given
+     * codepoint. The child is created and linked in key order when
+     * it's not present, a removed node is reused if there's one.
+     *
+     * @param node      parent node
+     * @param codepoint edge codepoint
+     * @return existing or new child node
+     */
+    private int child(final int node, final int codepoint) {
+        int previous = NONE, sibling = first[node];
+        while (sibling != NONE && keys[sibling] < codepoint) {
+            previous = sibling;
+            sibling = next[sibling];
+        }
+        if (sibling != NONE && keys[sibling] == codepoint) return sibling;
+        final int child;
+        if (free != NONE) {
+            child = free;
+            free = next[child];
+            freed--;
+        } else {
+            if (size == keys.length) grow(size + 1);
+            child = size++;
+        }
+        keys[child] = codepoint;
+        next[child] = sibling;
+        if (previous == NONE) first[node] = child;
+        else next[previous] = child;
+        return child;
+    }
+
+    /**
+     * Attaches a sub-trie whose words all start with the same codepoint
+     * under the root. Its nodes are copied behind the existing ones with
+     * their links shifted, unless the root already has that edge, then it
+     * is merged node by node. The caller holds the write lock.
+     *
+     * @param subTrie sub-trie with a single first-level node
+     * @return true if any of its words wasn't in the trie yet
+     */
+    private boolean graft(final TrieExpression subTrie) {
+        final int top = subTrie.first[ROOT];
+        int previous = NONE, sibling = first[ROOT];
+        while (sibling != NONE && keys[sibling] < subTrie.keys[top]) {
+            previous = sibling;
+            sibling = next[sibling];
+        }
+        if (sibling != NONE && keys[sibling] == subTrie.keys[top]) {
+            return merge(subTrie, sibling);
+        }
+        final int offset = size - 1; // node n of the sub-trie becomes offset + n
+        if (keys.length < size + subTrie.size - 1) grow(size + subTrie.size - 1);
+        for (int n = 1; n < subTrie.size; n++) {
+            keys[offset + n] = subTrie.keys[n];
+            first[offset + n] = subTrie.first[n] == NONE ? NONE : offset + subTrie.first[n];
+            next[offset + n] = subTrie.next[n] == NONE ? NONE : offset + subTrie.next[n];
+            if (subTrie.isTerminal(n)) terminal[(offset + n) >>> 6] |= 1L << (offset + n);
+        }
+        size += subTrie.size - 1;
+        next[offset + top] = sibling;
+        if (previous == NONE) first[ROOT] = offset + top;
+        else next[previous] = offset + top;
+        return true;
+    }
+
+    /**
+     * Adds every node of a sub-trie below an existing first-level node.
+     */
+    private boolean merge(final TrieExpression subTrie, final int into) {
+        return copy(subTrie, subTrie.first[ROOT], into, 1);
+    }
+
+    /**
+     * Adds the subtree below a node of another trie below a node of this
+     * one, the final states included. The cached expressions on the path
+     * of every word that wasn't there yet are cleared, from the given node
+     * down.
+     *
+     * @param source trie to copy from
+     * @param from   node of the source
+     * @param into   node of this trie
+     * @param depth  depth of the node of this trie
+     * @return true if any of the words wasn't in this trie yet
+     */
+    private boolean copy(final TrieExpression source, final int from, final int into, final int depth) {
+        int[] stack = new int[48]; // triples of (source node, node, depth)
+        final int[] path = new int[CACHED_DEPTH + 1]; // cached node of each level above the current one
+        int top = 0;
+        boolean changed = false;
+        stack[top++] = from;
+        stack[top++] = into;
+        stack[top++] = depth;
+        while (top > 0) {
+            // the nodes are visited in preorder, so the path of the cached
+            // levels is the last node seen at each of them
+            final int level = stack[--top], node = stack[--top], at = stack[--top];
+            if (level <= CACHED_DEPTH) path[level] = node;
+            if (source.isTerminal(at) && !isTerminal(node)) {
+                terminal[node >>> 6] |= 1L << node;
+                for (int l = depth; l <= Math.min(level, CACHED_DEPTH); l++) rendered[path[l]] = null;
+                changed = true;
             }
+            for (int c = source.firstChild(at); c != NONE; c = source.nextSibling(c)) {
+                if (top + 3 > stack.length) stack = Arrays.copyOf(stack, stack.length << 1);
+                final int child = child(node, source.key(c));
+                stack[top++] = c;
+                stack[top++] = child;
+                stack[top++] = level + 1;
+            }
+        }
+        return changed;
+    }
+
+    private void grow(final int minimum) {
+        final int capacity = Math.max(minimum, size + (size >> 1));
+        keys = Arrays.copyOf(keys, capacity);
+        first = Arrays.copyOf(first, capacity);
+        next = Arrays.copyOf(next, capacity);
+        rendered = Arrays.copyOf(rendered, capacity);
+        twins = Arrays.copyOf(twins, capacity);
+        terminal = Arrays.copyOf(terminal, (capacity + 63) >>> 6);
+    }
+
+    private boolean isTerminal(final int node) {
+        final long bits = image == null ? terminal[node >>> 6] : image.terminal.get(node >>> 6);
+        return (bits & 1L << node) != 0;
+    }
+
+    private void checkWritable() {
+        if (image != null) throw new GenericException("a mapped trie is read-only");
+    }
+
+    // Read-only views of the nodes, on the heap or mapped. Also used for
+    // building an AhoCorasick automaton, the caller holds the read lock.
+
+    Lock readLock() {
+        return lock.readLock();
+    }
 
-            if (this.hasOptionals) {
-                if (this.hasCharacterClasses) {
-                    // optional abc?
-                    return expression.append(QUESTION_MARK);
+    int nodeCount() {
+        return size - freed;
+    }
+
+    int firstChild(final int node) {
+        return image == null ? first[node] : image.first.get(node);
+    }
+
+    int nextSibling(final int node) {
+        return image == null ? next[node] : image.next.get(node);
+    }
+
+    int key(final int node) {
+        return image == null ? keys[node] : image.keys.get(node);
+    }
+
+    boolean isFinal(final int node) {
+        return isTerminal(node);
+    }
+
+    private boolean isUnary(final int node) {
+        return firstChild(node) != NONE && nextSibling(firstChild(node)) == NONE;
+    }
+
+    /**
+     * Whether a node is written as its own alternative, that is it has
+     * edges and no smaller sibling with the same subtree.
+     */
+    private boolean isBranch(final int node) {
+        return firstChild(node) != NONE && twins[node] >= 0;
+    }
+
+    /**
+     * Renders the trie depth-first into a single buffer. Edges to nodes
+     * with further edges become alternations in key order and edges to
+     * leaf nodes are collected into a trailing character class:
+     * jun,jul => ju[nl]. Edges to identical subtrees are written as one
+     * class in front of the first one, the others are skipped.
+     * <p>
+     * The traversal uses an explicit stack of frames instead of recursion,
+     * so a long word can't overflow the call stack and nothing is copied
+     * from a child's expression into its parent's. A frame is only kept
+     * while its node still has something to write after the current child,
+     * so a chain of single edges i.e. a long url is written without any.
+     * Cached subtrees are copied as they are and the subtrees that are
+     * cacheable but stale are cached once they're written.
+     *
+     * @param root      node with at least one child
+     * @param rootDepth depth of the node
+     * @return expression
+     */
+    private StringBuilder render(final int root, final int rootDepth) {
+
+        if (rootDepth < CACHED_DEPTH) linkChildren(root);
+        else classify(root);
+        final StringBuilder expression = new StringBuilder();
+        // frame: node, cursor (next sibling to visit), leaf count, flags, start, depth
+        int[] stack = new int[FRAME * 16];
+        int top = enter(expression, stack, 0, root, rootDepth);
+        final int[] run = new int[5]; // period, minimum, maximum, node after the run, split
+
+        while (top > 0) {
+            final int frame = top - FRAME;
+            final int node = stack[frame];
+            int cursor = stack[frame + 1];
+            while (cursor != NONE && !isBranch(cursor)) cursor = nextSibling(cursor); // skip leaves and twins
+            final int flags = stack[frame + 3];
+            final int depth = stack[frame + 5];
+
+            if (cursor != NONE) {
+                if ((flags & STARTED) != 0) expression.append(ALTERNATION);
+                int target = cursor, edges = 1; // node entered next, edges written to reach it
+                final boolean quantified = twins[cursor] == NONE && repetition(cursor, run);
+                if (quantified && run[4] != 0) { // (?:a{1,999}|a{1000}(?:b)?)
+                    expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
+                    appendRun(expression, cursor, run[0], run[1], run[2] - 1);
+                    appendRun(expression.append(ALTERNATION), cursor, run[0], run[2], run[2]);
+                }
+                if (quantified) {
+                    if (run[4] == 0) appendRun(expression, cursor, run[0], run[1], run[2]); // a{1,4}
+                    target = run[3];
+                    edges = run[0] * run[2];
+                } else if (twins[cursor] == NONE) {
+                    Common.appendLiteral(expression, key(cursor)); // concat(a,b)
+                } else {
+                    expression.append(OPEN_SQUARE_BRACKET); // [bchr]at
+                    Common.appendLiteral(expression, key(cursor));
+                    for (int t = twins[cursor]; t != NONE; t = ~twins[t]) Common.appendLiteral(expression, key(t));
+                    expression.append(CLOSE_SQUARE_BRACKET);
+                }
+                int following = nextSibling(cursor);
+                while (following != NONE && !isBranch(following)) following = nextSibling(following);
+                if (following == NONE && stack[frame + 2] == 0 && depth > CACHED_DEPTH
+                        && (flags & (ALTERNATION_GROUP | OPTIONAL)) == 0) {
+                    top = frame; // nothing left to write for this node
                 } else {
-                    // a quicker way to insert (?:...)
-                    expression
-                            .insert(0, "" + PAREN_OPEN + QUESTION_MARK + COLON)
-                            .append(PAREN_CLOSE)
-                            .append(QUESTION_MARK);
-                    return expression;
+                    stack[frame + 1] = following;
+                    stack[frame + 3] = flags | STARTED;
                 }
+                final String cached = depth < CACHED_DEPTH && target == cursor ? rendered[cursor] : null;
+                if (cached != null) {
+                    expression.append(cached);
+                    continue;
+                }
+                if (top + 2 * FRAME > stack.length) stack = Arrays.copyOf(stack, stack.length << 1);
+                if (quantified && run[4] != 0) { // a frame without a node closes the split run
+                    stack[top] = target;
+                    stack[top + 1] = NONE;
+                    stack[top + 2] = 0;
+                    stack[top + 3] = ALTERNATION_GROUP;
+                    stack[top + 4] = expression.length();
+                    stack[top + 5] = Integer.MAX_VALUE; // never cached
+                    top += FRAME;
+                }
+                top = enter(expression, stack, top, target, depth + edges);
+                continue;
             }
 
+            final int leaves = stack[frame + 2];
+            if (leaves > 0) {
+                if ((flags & STARTED) != 0) expression.append(ALTERNATION);
+                if (leaves > 1) expression.append(OPEN_SQUARE_BRACKET);
+                for (int c = firstChild(node); c != NONE; c = nextSibling(c)) {
+                    if (firstChild(c) == NONE) Common.appendLiteral(expression, key(c)); // [abc]
+                }
+                if (leaves > 1) expression.append(CLOSE_SQUARE_BRACKET);
+            }
+            if ((flags & ALTERNATION_GROUP) != 0) expression.append(PAREN_CLOSE);
+            if ((flags & OPTIONAL_GROUP) != 0) expression.append(PAREN_CLOSE);
+            if ((flags & OPTIONAL) != 0) expression.append(QUESTION_MARK);
+            if (depth <= CACHED_DEPTH) rendered[node] = expression.substring(stack[frame + 4]);
+            top = frame;
+        }
+
+        return expression;
+
+    }
+
+    /**
+     * Appends a unit of a run with a counted quantifier. i.e. a{1,4}
+     */
+    private void appendRun(final StringBuilder expression, final int node, final int period,
+                           final int minimum, final int maximum) {
+        if (period > 1) expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
+        for (int t = 0, u = node; t < period; t++, u = firstChild(u)) Common.appendLiteral(expression, key(u));
+        if (period > 1) expression.append(PAREN_CLOSE);
+        expression.append(OPEN_CURLY_BRACE).append(minimum);
+        if (maximum > minimum) expression.append(COMMA).append(maximum);
+        expression.append(CLOSE_CURLY_BRACE);
+    }
+
+    /**
+     * Looks for a unit of up to {@link #MAX_PERIOD} edges that repeats on
+     * a chain of single edges, starting with the edge into a node. i.e.
+     * a,aa,aaa,aaaa => a{1,4} and 000001,000002 => 0{5}[12]. Words may end
+     * after any of the last units of a run that ends in a leaf. A run of
+     * such ends that goes on past its last unit, i.e. because it reached
+     * {@link #MAX_REPETITION}, is split in two alternatives,
+     * a,aa,...,a{1000}b => (?:a{1,999}|a{1000}b?) so its tail isn't nested
+     * once per unit. Any other run stops at the first unit a word ends
+     * after, the rest is written as usual. A run is only taken when the
+     * counted quantifier is shorter than writing the units out.
+     *
+     * @param node first node of the chain
+     * @param run  receives the period, minimum, maximum, the node after the run and 1 if it's split
+     * @return true if there's a run worth quantifying
+     */
+    private boolean repetition(final int node, final int[] run) {
+        // a unit can only repeat where its first key comes again
+        for (int period = 1, at = node; period <= MAX_PERIOD && isUnary(at); period++) {
+            if (key(firstChild(at)) == key(node) && repeats(node, period, run)) return true;
+            if (isTerminal(at)) break; // it would be inside any longer unit
+            at = firstChild(at);
+        }
+        return false;
+    }
+
+    private boolean repeats(final int node, final int period, final int[] run) {
+
+        // units spelling the same keys as the first one, and their ends
+        int units = 0, end = NONE, from = node;
+        int firstFinal = 0, firstFinalEnd = NONE, lastGap = 0; // among the inner unit ends
+        while (units < MAX_REPETITION) {
+            int at = from, unit = node;
+            boolean matched = key(at) == key(unit);
+            for (int t = 1; t < period && matched; t++) {
+                matched = !isTerminal(at) && isUnary(at);
+                if (!matched) break;
+                at = firstChild(at);
+                unit = firstChild(unit);
+                matched = key(at) == key(unit);
+            }
+            if (!matched) break;
+            if (units > 0) { // the previous end is inside the run
+                if (!isTerminal(end)) lastGap = units;
+                else if (firstFinal == 0) {
+                    firstFinal = units;
+                    firstFinalEnd = end;
+                }
+            }
+            units++;
+            end = at;
+            if (!isUnary(end)) break;
+            from = firstChild(end);
+        }
+
+        final StringBuilder unit = new StringBuilder();
+        for (int t = 0, u = node; t < period; t++, u = firstChild(u)) Common.appendLiteral(unit, key(u));
+
+        int minimum, maximum, after;
+        // the run goes on past its last unit, i.e. it reached the limit
+        boolean split = firstFinal != 0 && lastGap < firstFinal && firstChild(end) != NONE;
+        if (firstFinal == 0) {
+            minimum = maximum = units; // 0{4}
+            after = end;
+        } else if (lastGap < firstFinal && (!split || shorter(unit, period, firstFinal, units, true))) {
+            minimum = firstFinal; // a{1,4} or (?:a{1,999}|a{1000}...)
+            maximum = units;
+            after = end;
+        } else {
+            minimum = maximum = firstFinal;
+            after = firstFinalEnd;
+            split = false;
+        }
+        if (maximum < 2 || !shorter(unit, period, minimum, maximum, split)) return false;
+
+        run[0] = period;
+        run[1] = minimum;
+        run[2] = maximum;
+        run[3] = after;
+        run[4] = split ? 1 : 0;
+        return true;
+
+    }
+
+    /**
+     * Tells whether a run written with counted quantifiers is shorter than
+     * writing its units out, with an optional group per unit a word ends
+     * after. A split run is written as two alternatives in a group.
+     */
+    private static boolean shorter(final CharSequence unit, final int period, final int minimum,
+                                   final int maximum, final boolean split) {
+        // a(?:a(?:aa?)?)? the innermost optional of a single char needs no group
+        int written = maximum * unit.length() + (maximum - minimum) * 5;
+        if (period == 1 && maximum > minimum) written -= 4;
+        final int quantified = unit.length() + (period > 1 ? 4 : 0) + 2; // (?:ab){}
+        int counted = quantified + Integer.toString(minimum).length();
+        final int upper = split ? maximum - 1 : maximum; // (?:a{1,999}|a{1000}...)
+        if (upper > minimum) counted += 1 + Integer.toString(upper).length();
+        if (split) counted += 5 + quantified + Integer.toString(maximum).length();
+        return counted < written;
+    }
+
+    /**
+     * Writes the group openers of a node and pushes its frame. A leaf
+     * node writes nothing and pushes no frame.
+     *
+     * @return new stack top
+     */
+    private int enter(final StringBuilder expression, final int[] stack, final int top,
+                      final int node, final int depth) {
+        if (firstChild(node) == NONE) return top; // Terminate; final state
+        final int start = expression.length();
+        int branches = 0, leaves = 0;
+        for (int c = firstChild(node); c != NONE; c = nextSibling(c)) {
+            if (firstChild(c) == NONE) leaves++;
+            else if (isBranch(c)) branches++;
+        }
+        int flags = 0;
+        if (branches + (leaves > 0 ? 1 : 0) > 1) flags |= ALTERNATION_GROUP;
+        if (isTerminal(node)) flags |= OPTIONAL;
+        // optional character classes only need a ?, i.e. abc?
+        if (isTerminal(node) && branches > 0) flags |= OPTIONAL_GROUP;
+        if ((flags & OPTIONAL_GROUP) != 0) expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
+        if ((flags & ALTERNATION_GROUP) != 0) expression.append(PAREN_OPEN).append(QUESTION_MARK).append(COLON);
+        stack[top] = node;
+        stack[top + 1] = firstChild(node);
+        stack[top + 2] = leaves;
+        stack[top + 3] = flags;
+        stack[top + 4] = start;
+        stack[top + 5] = depth;
+        return top + FRAME;
+    }
+
+    /**
+     * The expression of the trie at some version of its words, and
+     * whether it differs from the revision it was compared with.
+     */
+    public static final class Revision {
+
+        private final long version;
+        private final String expression;
+        private final boolean changed;
+
+        private Revision(final long version, final String expression, final boolean changed) {
+            this.version = version;
+            this.expression = expression;
+            this.changed = changed;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public String expression() {
             return expression;
+        }
+
+        /**
+         * @return true if the expression differs from the previous revision's
+         */
+        public boolean changed() {
+            return changed;
+        }
+
+    }
+
+    /**
+     * Node arrays of a mapped trie, views of the buffer at the offsets
+     * {@link #writeTo(Path)} writes them to.
+     */
+    private static final class Image {
+
+        private final int nodes;
+        private final IntBuffer keys, first, next;
+        private final LongBuffer terminal;
+
+        private Image(final ByteBuffer buffer, final int nodes) {
+            this.nodes = nodes;
+            this.keys = ints(buffer, IMAGE_HEADER, nodes);
+            this.first = ints(buffer, IMAGE_HEADER + 4 * nodes, nodes);
+            this.next = ints(buffer, IMAGE_HEADER + 8 * nodes, nodes);
+            this.terminal = buffer.slice(terminalOffset(nodes), 8 * ((nodes + 63) >>> 6))
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        }
 
+        private static IntBuffer ints(final ByteBuffer buffer, final int offset, final int length) {
+            return buffer.slice(offset, 4 * length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
         }
 
     }
@@ -28,7 +28,7 @@ public final class CharClasses {
      * @return match anything
      */
     public static Expression anything() {
-        return simpleSetCp(PERIOD);
+        return () -> new StringBuilder().append(PERIOD);
     }
 
 
@@ -36,15 +36,16 @@ public final class CharClasses {
 
     /**
      * Simply converts a given set to a negated character class.
-     * <code>[^acd]</code>. This is a impure function. Because
-     * it mutates the source set.
+     * <code>[^acd]</code>. The source set is not modified, a new
+     * set matching the complement of it is returned instead. So,
+     * negating a negated set gives back the positive set.
      *
      * @param set source set to convert
      * @return negated set expression
      */
     public static Expression negated(final Expression set) {
         if (set instanceof SetExpression) {
-            ((SetExpression) set).negate();
+            return ((SetExpression) set).negate();
         }
         return set;
     }
@@ -77,6 +78,23 @@ public final class CharClasses {
         return ((SetExpression) setA).intersection((SetExpression) setB);
     }
 
+    /**
+     * Converts a given set to its case folded form. Use it when the
+     * expression is compiled with {@link ReXPlainDSL.Flags#CASE_INSENSITIVE}
+     * or inside a {@link Groups#caseInsensitiveGroup(Expression...)}.
+     * Only one member of each case orbit is written, so the class
+     * gets smaller. i.e. [A-Za-z] => [A-Z] and [^a] => [^A]
+     *
+     * @param set source set to fold
+     * @return case folded set expression
+     */
+    public static Expression caseFolded(final Expression set) {
+        if (!(set instanceof SetExpression)) {
+            throw new GenericException("caseFolded only supported for set expressions");
+        }
+        return ((SetExpression) set).caseFolded();
+    }
+
     public static Expression includeUnicodeScript(final Expression set, final UnicodeScript script, final boolean negated) {
         if (!(set instanceof SetExpression)) {
             throw new GenericException("includeUnicodeScript only supported for set expressions");
@@ -99,9 +117,8 @@ public final class CharClasses {
         if (from.length() > 2 || to.length() > 2) {
             throw new SetElementException("expected bmp or astral character");
         }
-        final SetExpression set = new SetExpression(false);
-        set.addRange(Common.toCodepoint(from), Common.toCodepoint(to));
-        return set;
+        return new SetExpression(false)
+                .withRange(Common.toCodepoint(from), Common.toCodepoint(to));
     }
 
     /**
@@ -112,9 +129,7 @@ public final class CharClasses {
      * @return set expression
      */
     public static Expression rangedSetCp(final int codepointA, final int codepointB) {
-        final SetExpression set = new SetExpression(false);
-        set.addRange(codepointA, codepointB);
-        return set;
+        return new SetExpression(false).withRange(codepointA, codepointB);
     }
 
     /**
@@ -127,25 +142,38 @@ public final class CharClasses {
      * @return set expression
      */
     public static Expression simpleSetStr(final String... characters) {
-        final SetExpression set = new SetExpression(false);
-        for (final String c : Objects.requireNonNull(characters)) {
-            if (c.length() > 2) {
+        final int[] codepoints = new int[Objects.requireNonNull(characters).length];
+        for (int i = 0; i < characters.length; i++) {
+            if (characters[i].length() > 2) {
                 throw new SetElementException("expected bmp or astral codepoint");
             }
-            set.addChar(Common.toCodepoint(c));
+            codepoints[i] = Common.toCodepoint(characters[i]);
         }
-        return set;
+        return SetExpression.of(codepoints);
     }
 
     /**
+     * Creates a simple regex charclass from codepoints in any order.
+     * Duplicates are dropped and consecutive codepoints are joined
+     * into ranges. i.e. 0x61, 0x63, 0x62 => [a-c]
+     *
      * @param codepoints codepoints
      * @return set expression
      */
     public static Expression simpleSetCp(final int... codepoints) {
-        final SetExpression set = new SetExpression(false);
-        for (final int c : Objects.requireNonNull(codepoints))
-            set.addChar(c);
-        return set;
+        return SetExpression.of(codepoints);
+    }
+
+    /**
+     * Creates a simple regex charclass of every character used in the
+     * given text. This is useful to build a class from a large corpus,
+     * i.e. every character seen in a vocabulary. i.e. "hello" => [ehlo]
+     *
+     * @param text any text
+     * @return set expression
+     */
+    public static Expression textSet(final CharSequence text) {
+        return SetExpression.fromText(text);
     }
 
     /**
@@ -174,7 +202,7 @@ public final class CharClasses {
          * @return lowercase charclass
          */
         public static Expression lowercase() {
-            return rangedSetStr("a", "z");
+            return Table.LOWERCASE;
         }
 
         /**
@@ -185,7 +213,7 @@ public final class CharClasses {
          * @return uppercase charclass
          */
         public static Expression uppercase() {
-            return rangedSetStr("A", "Z");
+            return Table.UPPERCASE;
         }
 
         /**
@@ -194,7 +222,7 @@ public final class CharClasses {
          * @return ascii charset
          */
         public static Expression ascii() {
-            return rangedSetCp(0x00, 0x7F);
+            return Table.ASCII;
         }
 
         /**
@@ -203,7 +231,7 @@ public final class CharClasses {
          * @return ascii charset
          */
         public static Expression asciiExtended() {
-            return rangedSetCp(0x00, 0xFF);
+            return Table.ASCII_EXTENDED;
         }
 
         /**
@@ -213,7 +241,7 @@ public final class CharClasses {
          * @return alphabetic charclass
          */
         public static Expression alphabetic() {
-            return union(lowercase(), uppercase());
+            return Table.ALPHABETIC;
         }
 
         /**
@@ -223,7 +251,7 @@ public final class CharClasses {
          * @return numeric charclass
          */
         public static Expression digit() {
-            return rangedSetStr("0", "9");
+            return Table.DIGIT;
         }
 
         /**
@@ -233,7 +261,7 @@ public final class CharClasses {
          * @return numeric charclass
          */
         public static Expression notDigit() {
-            return negated(digit());
+            return Table.NOT_DIGIT;
         }
 
         /**
@@ -242,7 +270,7 @@ public final class CharClasses {
          * @return alphanumeric charclass
          */
         public static Expression alphanumeric() {
-            return union(alphabetic(), digit());
+            return Table.ALPHANUMERIC;
         }
 
         /**
@@ -252,8 +280,7 @@ public final class CharClasses {
          * @return punctuation charclass
          */
         public static Expression punctuation() {
-            final String elements = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
-            return simpleSetStr(elements.split("")/*split into char*/);
+            return Table.PUNCTUATION;
         }
 
         /**
@@ -263,7 +290,7 @@ public final class CharClasses {
          * @return graphical charclass
          */
         public static Expression graphical() {
-            return union(alphanumeric(), punctuation());
+            return Table.GRAPHICAL;
         }
 
         /**
@@ -273,7 +300,7 @@ public final class CharClasses {
          * @return printable charclass
          */
         public static Expression printable() {
-            return union(graphical(), simpleSetCp(0x20/*space*/));
+            return Table.PRINTABLE;
         }
 
         /**
@@ -283,7 +310,7 @@ public final class CharClasses {
          * @return blank-space charclass
          */
         public static Expression blank() {
-            return simpleSetCp(0x09/*h-tab*/, 0x20/*space*/);
+            return Table.BLANK;
         }
 
         /**
@@ -292,10 +319,7 @@ public final class CharClasses {
          * @return hex charclass
          */
         public static Expression hexDigit() {
-            return union(
-                    rangedSetStr("A", "F"),
-                    union(digit(), rangedSetStr("a", "f"))
-            );
+            return Table.HEX_DIGIT;
         }
 
         /**
@@ -306,8 +330,7 @@ public final class CharClasses {
          * @return white space charclass
          */
         public static Expression whitespace() {
-            // following codepoints as [ \t\n\v\f\r] 0x0B == \v
-            return simpleSetCp(0x20, 0x9, 0xA, 0xB, 0xC, 0xD);
+            return Table.WHITESPACE;
         }
 
         /**
@@ -318,9 +341,7 @@ public final class CharClasses {
          * @return negated whitespace charclass
          */
         public static Expression notWhitespace() {
-            // following codepoints as [^ \t\n\v\f\r] 0x0B == \v
-            // in some languages, including java.
-            return negated(whitespace());
+            return Table.NOT_WHITESPACE;
         }
 
         /**
@@ -330,7 +351,7 @@ public final class CharClasses {
          * @return word charclass
          */
         public static Expression word() {
-            return union(alphanumeric(), simpleSetStr("_"));
+            return Table.WORD;
         }
 
         /**
@@ -340,7 +361,7 @@ public final class CharClasses {
          * @return negated word charclass
          */
         public static Expression notWord() {
-            return negated(word());
+            return Table.NOT_WORD;
         }
 
         /**
@@ -350,7 +371,42 @@ public final class CharClasses {
          * @return control charclass
          */
         public static Expression control() {
-            return union(rangedSetCp(0x0, 0x1F), simpleSetCp(0x7f));
+            return Table.CONTROL;
+        }
+
+
+        /**
+         * Every POSIX class is built once, when the first one is requested,
+         * and shared from then on. The classes are immutable so they can be
+         * returned directly and their rendered regex is cached by the set.
+         */
+        private static final class Table {
+
+            private static final SetExpression LOWERCASE = set('a', 'z');
+            private static final SetExpression UPPERCASE = set('A', 'Z');
+            private static final SetExpression ASCII = set(0x00, 0x7F);
+            private static final SetExpression ASCII_EXTENDED = set(0x00, 0xFF);
+            private static final SetExpression DIGIT = set('0', '9');
+            private static final SetExpression NOT_DIGIT = DIGIT.negate();
+            private static final SetExpression ALPHABETIC = LOWERCASE.union(UPPERCASE);
+            private static final SetExpression ALPHANUMERIC = ALPHABETIC.union(DIGIT);
+            private static final SetExpression PUNCTUATION = set('!', '/')
+                    .withRange(':', '@').withRange('[', '`').withRange('{', '~');
+            private static final SetExpression GRAPHICAL = ALPHANUMERIC.union(PUNCTUATION);
+            private static final SetExpression PRINTABLE = GRAPHICAL.withChar(0x20/*space*/);
+            private static final SetExpression BLANK = set(0x09/*h-tab*/, 0x09).withChar(0x20/*space*/);
+            private static final SetExpression HEX_DIGIT = DIGIT.withRange('A', 'F').withRange('a', 'f');
+            // following codepoints as [ \t\n\v\f\r] 0x0B == \v
+            private static final SetExpression WHITESPACE = set(0x09, 0x0D).withChar(0x20);
+            private static final SetExpression NOT_WHITESPACE = WHITESPACE.negate();
+            private static final SetExpression WORD = ALPHANUMERIC.withChar('_');
+            private static final SetExpression NOT_WORD = WORD.negate();
+            private static final SetExpression CONTROL = set(0x00, 0x1F).withChar(0x7F);
+
+            private static SetExpression set(final int from, final int to) {
+                return new SetExpression(false).withRange(from, to);
+            }
+
         }
 
     }
@@ -362,52 +418,76 @@ public final class CharClasses {
     public static class EscapeSequences {
 
         public static Expression space() {
-            return simpleSetStr(" ");
+            return Table.SPACE;
         }
 
         public static Expression backslash() {
-            return simpleSetStr("\\"); // \
+            return Table.BACKSLASH; // \
         }
 
         public static Expression doubleQuotes() {
-            return simpleSetStr("\""); // "
+            return Table.DOUBLE_QUOTES; // "
         }
 
         public static Expression singleQuote() {
-            return simpleSetStr("'"); // '
+            return Table.SINGLE_QUOTE; // '
         }
 
         public static Expression backtick() {
-            return simpleSetStr("`"); // `
+            return Table.BACKTICK; // `
         }
 
         public static Expression bell() {
-            return simpleSetCp(0x07); // \a
+            return Table.BELL; // \a
         }
 
         public static Expression horizontalTab() {
             // \h 	A horizontal whitespace character: [ \t\xA0\u1680\u180e\u2000-\u200a\u202f\u205f\u3000]
             // \H 	A non-horizontal whitespace character: [^\h]
-            return simpleSetCp(0x09); // \t
+            return Table.HORIZONTAL_TAB; // \t
         }
 
         public static Expression linebreak() {
-            return simpleSetCp(0x0A); // \n
+            return Table.LINEBREAK; // \n
         }
 
         public static Expression verticalTab() {
             // Re consider:
             // \v 	A vertical whitespace character: [\n\x0B\f\r\x85\u2028\u2029]
             // \V 	A non-vertical whitespace character: [^\v]
-            return simpleSetCp(0x0B);
+            return Table.VERTICAL_TAB;
         }
 
         public static Expression formFeed() {
-            return simpleSetCp(0x0C); // \f
+            return Table.FORM_FEED; // \f
         }
 
         public static Expression carriageReturn() {
-            return simpleSetCp(0x0D); // \r
+            return Table.CARRIAGE_RETURN; // \r
+        }
+
+
+        /**
+         * Single character escape sequences, built once on first use.
+         */
+        private static final class Table {
+
+            private static final SetExpression SPACE = set(' ');
+            private static final SetExpression BACKSLASH = set('\\');
+            private static final SetExpression DOUBLE_QUOTES = set('"');
+            private static final SetExpression SINGLE_QUOTE = set('\'');
+            private static final SetExpression BACKTICK = set('`');
+            private static final SetExpression BELL = set(0x07);
+            private static final SetExpression HORIZONTAL_TAB = set(0x09);
+            private static final SetExpression LINEBREAK = set(0x0A);
+            private static final SetExpression VERTICAL_TAB = set(0x0B);
+            private static final SetExpression FORM_FEED = set(0x0C);
+            private static final SetExpression CARRIAGE_RETURN = set(0x0D);
+
+            private static SetExpression set(final int codepoint) {
+                return new SetExpression(false).withChar(codepoint);
+            }
+
         }
 
     }
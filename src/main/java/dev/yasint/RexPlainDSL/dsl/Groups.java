@@ -10,8 +10,8 @@ import static dev.yasint.RexPlainDSL.util.Common.asRegexGroupName;
 
 /**
  * Contains all the grouping constructs supported by the
- * RE2 regex engine. Currently groups with modifiers are
- * not supported.
+ * RE2 regex engine. Currently the only group modifier
+ * supported is the case-insensitive (?i:...) group.
  *
  * @since 1.0.0
  */
@@ -79,4 +79,26 @@ public final class Groups {
                 ).append(PAREN_CLOSE);
     }
 
+    /**
+     * Creates a non-capturing group with the case-insensitive modifier
+     * <code>(?i:...)</code> Only the sub-expressions of this group are
+     * matched case-insensitively. Sets inside it can be written with
+     * {@link CharClasses#caseFolded(Expression)} to keep them small.
+     *
+     * @param expressions sub-expressions of this group
+     * @return case-insensitive non-capturing group
+     */
+    public static Expression caseInsensitiveGroup(final Expression... expressions) {
+        return () -> Arrays.stream(Objects.requireNonNull(expressions))
+                .map(Expression::toRegex)
+                .reduce(
+                        new StringBuilder()
+                                .append(PAREN_OPEN)
+                                .append(QUESTION_MARK)
+                                .append(CASE_INSENSITIVE_MODIFIER)
+                                .append(COLON),
+                        StringBuilder::append
+                ).append(PAREN_CLOSE);
+    }
+
 }
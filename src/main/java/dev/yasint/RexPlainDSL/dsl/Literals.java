@@ -2,11 +2,12 @@ package dev.yasint.RexPlainDSL.dsl;
 
 import dev.yasint.RexPlainDSL.api.Expression;
 import dev.yasint.RexPlainDSL.unicode.UnicodeScript;
+import dev.yasint.RexPlainDSL.unicode.UnicodeTables;
 
 import java.util.Objects;
 
 import static dev.yasint.RexPlainDSL.api.MetaCharacters.*;
-import static dev.yasint.RexPlainDSL.util.Common.asRegexLiteral;
+import static dev.yasint.RexPlainDSL.util.Common.appendLiteral;
 
 public final class Literals {
 
@@ -19,9 +20,29 @@ public final class Literals {
      * @return escaped literal
      */
     public static Expression literal(final String literals) {
-        return () -> new StringBuilder(
-                asRegexLiteral(Objects.requireNonNull(literals))
-        );
+        Objects.requireNonNull(literals);
+        return () -> appendLiteral(new StringBuilder(literals.length()), literals);
+    }
+
+    /**
+     * Treats a given string as a literal, optionally in its canonical
+     * case folded form. Every codepoint is written as the smallest member
+     * of its case orbit, like a folded set does. i.e. Jan => JAN
+     * <p>
+     * A folded literal must be compiled with CASE_INSENSITIVE or used
+     * inside a (?i:...) group, otherwise it only matches its folded form.
+     *
+     * @param literals some string
+     * @param foldCase whether to fold the case of the string
+     * @return escaped literal
+     */
+    public static Expression literal(final String literals, final boolean foldCase) {
+        Objects.requireNonNull(literals);
+        if (!foldCase) return literal(literals);
+        final String folded = literals.codePoints().map(UnicodeTables::caseFold)
+                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+                .toString();
+        return literal(folded);
     }
 
     /**
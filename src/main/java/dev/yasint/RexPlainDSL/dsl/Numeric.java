@@ -4,6 +4,8 @@ import dev.yasint.RexPlainDSL.api.Expression;
 import dev.yasint.RexPlainDSL.exceptions.NumericRangeException;
 import dev.yasint.RexPlainDSL.complex.RangeExpression;
 
+import java.math.BigInteger;
+
 import static dev.yasint.RexPlainDSL.api.MetaCharacters.QUESTION_MARK;
 import static dev.yasint.RexPlainDSL.dsl.Groups.nonCaptureGroup;
 
@@ -28,19 +30,51 @@ public final class Numeric {
      * to avoid condition collisions.
      *
      * @param from starting integer MIN_INT = 0
-     * @param to   ending integer MAX_INT = 10^9 - 1
+     * @param to   ending integer
      * @return range expression
      */
     public static Expression integerRange(final int from, final int to) {
+        return integerRange((long) from, (long) to);
+    }
+
+    /**
+     * Creates a ranged long integer based on from and to values
+     * inclusively. i.e. epoch milliseconds or 64-bit ids
+     *
+     * @param from starting integer MIN_LONG = 0
+     * @param to   ending integer
+     * @return range expression
+     */
+    public static Expression integerRange(final long from, final long to) {
+        if (from < 0)
+            throw new NumericRangeException("integer range can't be negative");
         if (from > to)
             throw new NumericRangeException("integer range is out of order");
         if (from == to)
             return Literals.literal(String.valueOf(from));
-        if (from >= 0 && to <= 9)
+        if (to <= 9)
             return CharClasses.rangedSetStr(String.valueOf(from), String.valueOf(to));
-        RangeExpression rangeExpression = new RangeExpression(from, to);
-        StringBuilder regex = rangeExpression.toRegex();
-        return nonCaptureGroup(rangeExpression);
+        return nonCaptureGroup(new RangeExpression(from, to));
+    }
+
+    /**
+     * Creates a ranged integer of arbitrary precision based on from and
+     * to values inclusively. i.e. account numbers
+     *
+     * @param from starting integer MIN = 0
+     * @param to   ending integer
+     * @return range expression
+     */
+    public static Expression integerRange(final BigInteger from, final BigInteger to) {
+        if (from.signum() < 0)
+            throw new NumericRangeException("integer range can't be negative");
+        if (from.compareTo(to) > 0)
+            throw new NumericRangeException("integer range is out of order");
+        if (to.bitLength() < Long.SIZE)
+            return integerRange(from.longValue(), to.longValue());
+        if (from.equals(to))
+            return Literals.literal(from.toString());
+        return nonCaptureGroup(new RangeExpression(from, to));
     }
 
 }
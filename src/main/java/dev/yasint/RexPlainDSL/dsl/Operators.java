@@ -1,8 +1,11 @@
 package dev.yasint.RexPlainDSL.dsl;
 
 import dev.yasint.RexPlainDSL.api.Expression;
+import dev.yasint.RexPlainDSL.complex.DawgExpression;
 import dev.yasint.RexPlainDSL.complex.TrieExpression;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Objects;
@@ -52,6 +55,55 @@ public final class Operators {
         return trie;
     }
 
+    /**
+     * Creates an alternation between multiple strings that are stored
+     * in their canonical case folded form, so the spellings of a word
+     * are written once. It must be compiled with CASE_INSENSITIVE or
+     * used inside a (?i:...) group.
+     * <code>{Jan,JAN,jan,Feb} = (?:FEB|JAN)</code>
+     *
+     * @param strings alternation strings
+     * @return wrapped alternated strings
+     */
+    public static Expression eitherStrCaseFolded(final String... strings) {
+        final TrieExpression trie = new TrieExpression(true);
+        trie.insertAll(Arrays.asList(strings));
+        return trie;
+    }
+
+    /**
+     * Creates an alternation between multiple strings. When suffixes are
+     * shared the strings are compiled into a minimal automaton, so common
+     * endings are written once as well as common beginnings.
+     * <code>{walking,talking,jumping} = (?:jump|[tw]alk)ing</code>
+     *
+     * @param strings       alternation strings
+     * @param shareSuffixes whether to factor common suffixes too
+     * @return wrapped alternated strings
+     */
+    public static Expression eitherStrSet(final Set<String> strings, final boolean shareSuffixes) {
+        if (!shareSuffixes) return eitherStrSet(strings);
+        final DawgExpression dawg = new DawgExpression();
+        dawg.insertAll(strings);
+        return dawg;
+    }
+
+    /**
+     * Creates an alternation between every line of a UTF-8 word file.
+     * The file is memory mapped and decoded straight into the trie, so
+     * the words are never held in memory as strings.
+     * <code>words.txt = (?:February|January|March)</code>
+     *
+     * @param path word list, one word per line
+     * @return wrapped alternated strings
+     * @throws IOException if the file can't be read or isn't valid UTF-8
+     */
+    public static Expression eitherStrFile(final Path path) throws IOException {
+        final TrieExpression trie = new TrieExpression();
+        trie.insertFrom(Objects.requireNonNull(path));
+        return trie;
+    }
+
     /**
      * Creates a concatenation of two given regular expressions. Note:
      * it simply just append the second expression. (a followed by b)
@@ -10,6 +10,12 @@ import static dev.yasint.RexPlainDSL.dsl.Groups.nonCaptureGroup;
 
 public final class Repetition {
 
+    /**
+     * Largest count a counted quantifier accepts. RE2 rejects larger ones
+     * since it expands every counted repetition into copies.
+     */
+    public static final int MAX_REPETITION = 1000;
+
     /**
      * Appends a one or more times (greedy) quantifier to a expression (+)
      * <code>[0-9]+</code> means a number between 0 and 9 one or many times.
@@ -55,7 +61,7 @@ public final class Repetition {
         // Invalid arguments validation
         if (expression instanceof GreedyQuantifier || expression instanceof ReluctantQuantifier) {
             throw new QuantifierException("cannot apply {n,} because it's already quantified");
-        } else if (times > 1000) {
+        } else if (times > MAX_REPETITION) {
             throw new QuantifierException("max repetition is 1000");
         }
         if (times == 0) return zeroOrMoreTimes(expression);
@@ -100,7 +106,7 @@ public final class Repetition {
             throw new QuantifierException("redundant sub-sequence");
         } else if (times == 1) {
             throw new QuantifierException("redundant quantifier");
-        } else if (times > 1000) {
+        } else if (times > MAX_REPETITION) {
             throw new QuantifierException("max repetition is 1000");
         }
         return (GreedyQuantifier) () -> nonCaptureGroup(Objects.requireNonNull(expression))
@@ -123,7 +129,7 @@ public final class Repetition {
         // Invalid arguments validation
         if (expression instanceof GreedyQuantifier || expression instanceof ReluctantQuantifier) {
             throw new QuantifierException("cannot apply {m,n} because it's already quantified");
-        } else if (m > 1000 || n > 1000) {
+        } else if (m > MAX_REPETITION || n > MAX_REPETITION) {
             throw new QuantifierException("max repetition is {1,1000}");
         } else if (m > n) {
             throw new QuantifierException("range is out of order");
@@ -0,0 +1,266 @@
+package dev.yasint.RexPlainDSL.unicode;
+
+import com.google.re2j.Pattern;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Codepoint interval tables for every {@link UnicodeScript} constant.
+ * The tables are generated from the running JDK's
+ * {@link Character.UnicodeScript} and general category data the first
+ * time any of them is requested. Every table is a sorted array of
+ * inclusive [start,end] pairs.
+ * <p>
+ * Note that the JDK and RE2 may ship different unicode versions. So,
+ * an explicit range built from these tables can differ slightly from
+ * what RE2 matches for the equivalent \p{...} class.
+ */
+public final class UnicodeTables {
+
+    // Two letter general category codes indexed by Character.getType(int)
+    private static final String[] CATEGORY_CODES = new String[Character.FINAL_QUOTE_PUNCTUATION + 1];
+
+    static {
+        CATEGORY_CODES[Character.UPPERCASE_LETTER] = "Lu";
+        CATEGORY_CODES[Character.LOWERCASE_LETTER] = "Ll";
+        CATEGORY_CODES[Character.TITLECASE_LETTER] = "Lt";
+        CATEGORY_CODES[Character.MODIFIER_LETTER] = "Lm";
+        CATEGORY_CODES[Character.OTHER_LETTER] = "Lo";
+        CATEGORY_CODES[Character.NON_SPACING_MARK] = "Mn";
+        CATEGORY_CODES[Character.ENCLOSING_MARK] = "Me";
+        CATEGORY_CODES[Character.COMBINING_SPACING_MARK] = "Mc";
+        CATEGORY_CODES[Character.DECIMAL_DIGIT_NUMBER] = "Nd";
+        CATEGORY_CODES[Character.LETTER_NUMBER] = "Nl";
+        CATEGORY_CODES[Character.OTHER_NUMBER] = "No";
+        CATEGORY_CODES[Character.SPACE_SEPARATOR] = "Zs";
+        CATEGORY_CODES[Character.LINE_SEPARATOR] = "Zl";
+        CATEGORY_CODES[Character.PARAGRAPH_SEPARATOR] = "Zp";
+        CATEGORY_CODES[Character.CONTROL] = "Cc";
+        CATEGORY_CODES[Character.FORMAT] = "Cf";
+        CATEGORY_CODES[Character.PRIVATE_USE] = "Co";
+        CATEGORY_CODES[Character.SURROGATE] = "Cs";
+        CATEGORY_CODES[Character.DASH_PUNCTUATION] = "Pd";
+        CATEGORY_CODES[Character.START_PUNCTUATION] = "Ps";
+        CATEGORY_CODES[Character.END_PUNCTUATION] = "Pe";
+        CATEGORY_CODES[Character.CONNECTOR_PUNCTUATION] = "Pc";
+        CATEGORY_CODES[Character.OTHER_PUNCTUATION] = "Po";
+        CATEGORY_CODES[Character.MATH_SYMBOL] = "Sm";
+        CATEGORY_CODES[Character.CURRENCY_SYMBOL] = "Sc";
+        CATEGORY_CODES[Character.MODIFIER_SYMBOL] = "Sk";
+        CATEGORY_CODES[Character.OTHER_SYMBOL] = "So";
+        CATEGORY_CODES[Character.INITIAL_QUOTE_PUNCTUATION] = "Pi";
+        CATEGORY_CODES[Character.FINAL_QUOTE_PUNCTUATION] = "Pf";
+    }
+
+    private UnicodeTables() {
+    }
+
+    /**
+     * Returns the codepoint intervals of a general category or a script.
+     * The returned array is a copy and can be modified by the caller.
+     *
+     * @param script unicode general category / script
+     * @return sorted inclusive [start,end] pairs
+     */
+    public static int[] intervals(final UnicodeScript script) {
+        final int[] table = Holder.TABLES[script.ordinal()];
+        return Arrays.copyOf(table, table.length);
+    }
+
+    /**
+     * Returns the simple case folding orbits of every cased codepoint as
+     * [codepoint, next] pairs sorted by codepoint. The next member is the
+     * next larger codepoint of the same orbit, and the largest member
+     * points back to the smallest one. i.e. K => k => U+212A => K
+     * The returned array is a copy and can be modified by the caller.
+     *
+     * @return sorted [codepoint, next] pairs
+     */
+    public static int[] caseOrbits() {
+        final int[] table = Folding.ORBITS;
+        return Arrays.copyOf(table, table.length);
+    }
+
+    /**
+     * Returns the smallest member of the case orbit of a codepoint, the
+     * same member a folded set writes. i.e. k => K, U+212A => K. Codepoints
+     * that aren't cased are returned as they are. Every member of an orbit
+     * takes the same number of chars, so folding a string keeps its length.
+     *
+     * @param codepoint codepoint to fold
+     * @return canonical member of its orbit
+     */
+    public static int caseFold(final int codepoint) {
+        if (codepoint < 0x80) { // ascii orbits don't reach past their own letters
+            return codepoint >= 'a' && codepoint <= 'z' ? codepoint - ('a' - 'A') : codepoint;
+        }
+        int member = codepoint;
+        for (int i = Folding.indexOf(member); i >= 0; i = Folding.indexOf(member)) {
+            final int next = Folding.ORBITS[(i << 1) + 1];
+            if (next < member) return next; // the largest member points back to the smallest
+            member = next;
+        }
+        return codepoint;
+    }
+
+    /**
+     * Holds the tables. This class is initialized on the first call to
+     * {@link #intervals(UnicodeScript)}, all the tables are generated in
+     * a single pass over the codepoint space.
+     */
+    private static final class Holder {
+
+        private static final int[][] TABLES = generate();
+
+        private static int[][] generate() {
+
+            final UnicodeScript[] constants = UnicodeScript.values();
+            final Map<String, UnicodeScript> byName = new HashMap<>();
+            for (final UnicodeScript constant : constants) {
+                byName.put(constant.getBlock(), constant); // i.e. Lu, Greek
+                byName.put(constant.getBlock().toUpperCase(Locale.ROOT), constant); // i.e. GREEK
+            }
+
+            // Character.getType(int) => (category, parent category)
+            final UnicodeScript[] category = new UnicodeScript[CATEGORY_CODES.length];
+            final UnicodeScript[] parent = new UnicodeScript[CATEGORY_CODES.length];
+            for (int type = 0; type < CATEGORY_CODES.length; type++) {
+                final String code = CATEGORY_CODES[type];
+                if (code == null) continue; // unassigned
+                category[type] = byName.get(code);
+                parent[type] = byName.get(code.substring(0, 1));
+            }
+
+            // Character.UnicodeScript => UnicodeScript, null if RE2 has no such script
+            final Character.UnicodeScript[] jdkScripts = Character.UnicodeScript.values();
+            final UnicodeScript[] script = new UnicodeScript[jdkScripts.length];
+            for (final Character.UnicodeScript jdkScript : jdkScripts) {
+                script[jdkScript.ordinal()] = byName.get(jdkScript.name());
+            }
+
+            final Builder[] builders = new Builder[constants.length];
+            for (int i = 0; i < constants.length; i++) builders[i] = new Builder();
+
+            for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp++) {
+                final int type = Character.getType(cp);
+                if (category[type] != null) builders[category[type].ordinal()].add(cp);
+                if (parent[type] != null) builders[parent[type].ordinal()].add(cp);
+                final UnicodeScript s = script[Character.UnicodeScript.of(cp).ordinal()];
+                if (s != null) builders[s.ordinal()].add(cp);
+            }
+
+            final int[][] tables = new int[constants.length][];
+            for (int i = 0; i < constants.length; i++) tables[i] = builders[i].build();
+            return tables;
+
+        }
+
+    }
+
+    /**
+     * Holds the case folding orbits. Two codepoints are in the same orbit
+     * when they have the same fold key, the lowercase of the uppercase.
+     * The dotted and dotless i are excluded like in the unicode simple case
+     * folding, they're only folded by the turkic mappings. The orbits are
+     * checked against the regex engine once, when the class is initialized.
+     */
+    private static final class Folding {
+
+        private static final int CASED_LIMIT = 0x20000;
+        private static final int[] ORBITS = generate();
+
+        private static int key(final int codepoint) {
+            if (codepoint == 0x0130 || codepoint == 0x0131) return codepoint;
+            return Character.toLowerCase(Character.toUpperCase(codepoint));
+        }
+
+        // index of the pair of a codepoint, -1 if it isn't cased
+        private static int indexOf(final int codepoint) {
+            int low = 0, high = (ORBITS.length >> 1) - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cp = ORBITS[mid << 1];
+                if (cp < codepoint) low = mid + 1;
+                else if (cp > codepoint) high = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        private static int[] generate() {
+
+            // fold key => members with that key, the key itself included. cased
+            // letters only exist in the first two planes, the rest are CJK
+            // ideographs, tags, variation selectors and private use.
+            final Map<Integer, TreeSet<Integer>> orbits = new HashMap<>();
+            for (int cp = 0; cp < CASED_LIMIT; cp++) {
+                final int key = key(cp);
+                if (key != cp) orbits.computeIfAbsent(key, k -> new TreeSet<>()).add(cp);
+            }
+
+            // RE2 may ship an older unicode version than the JDK. Members
+            // that the engine doesn't fold into their key yet are left out,
+            // so a folded set never relies on a missing fold. Only the keys
+            // are compiled since RE2J doesn't terminate while folding some
+            // of the newer members themselves. i.e. U+1C80 - U+1C88
+            final StringBuilder keys = new StringBuilder("(?i)[");
+            for (final int key : orbits.keySet()) {
+                keys.append("\\x{").append(Integer.toHexString(key)).append('}');
+            }
+            final Pattern folds = Pattern.compile(keys.append(']').toString());
+
+            final int[] next = new int[CASED_LIMIT];
+            int cased = 0;
+            for (final Map.Entry<Integer, TreeSet<Integer>> orbit : orbits.entrySet()) {
+                final TreeSet<Integer> members = orbit.getValue();
+                members.removeIf(member -> !folds.matches(new String(Character.toChars(member))));
+                members.add(orbit.getKey());
+                if (members.size() < 2) continue;
+                for (final int member : members) {
+                    final Integer higher = members.higher(member);
+                    next[member] = (higher != null ? higher : members.first()) + 1; // 0 means not cased
+                }
+                cased += members.size();
+            }
+
+            final int[] table = new int[cased << 1];
+            for (int cp = 0, i = 0; cp < CASED_LIMIT; cp++) {
+                if (next[cp] == 0) continue;
+                table[i++] = cp;
+                table[i++] = next[cp] - 1;
+            }
+            return table;
+
+        }
+
+    }
+
+    /**
+     * Appends ascending codepoints and joins consecutive ones into intervals.
+     */
+    private static final class Builder {
+
+        private int[] intervals = new int[8];
+        private int size = 0;
+
+        private void add(final int codepoint) {
+            if (size > 0 && intervals[size - 1] == codepoint - 1) {
+                intervals[size - 1] = codepoint;
+                return;
+            }
+            if (size == intervals.length) intervals = Arrays.copyOf(intervals, size << 1);
+            intervals[size++] = codepoint;
+            intervals[size++] = codepoint;
+        }
+
+        private int[] build() {
+            return Arrays.copyOf(intervals, size);
+        }
+
+    }
+
+}
@@ -15,37 +15,130 @@ public final class Common {
             "^[^[:punct:][:digit:][:space:]]\\w{1,15}$"
     );
 
-    // This regular expression matches all the special reserved chars.
+    // Escape table for the ascii range. A set bit means the char must be
+    // escaped with a backslash in that context. Everything else is either
+    // written as it is or as a hex escape, so no regex runs per char.
     //
-    private static final Pattern RESERVED = Pattern.compile(
-            "[<(\\[{\\\\^\\-=$!|\\]})?*+.>/]"
-    );
+    private static final byte LITERAL = 1, SET = 2;
+    private static final byte[] ESCAPES = new byte[128];
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] UPPER_HEX = "0123456789ABCDEF".toCharArray();
+
+    static {
+        for (final char c : "<([{\\^-=$!|]})?*+.>/".toCharArray()) ESCAPES[c] |= LITERAL;
+        for (final char c : "^]\\/-\"'`".toCharArray()) ESCAPES[c] |= SET;
+    }
 
     // Utility methods
 
     /**
-     * Escapes all the special regex constructs. {@code RESERVED}
+     * Escapes all the special regex constructs.
      * i.e. <code>https://</code> will transform to <code>https:\/\/</code>
      *
      * @param someString string to escape
      * @return escaped strings
      */
     public static String asRegexLiteral(final String someString) {
-        if (someString.length() == 1) { // quickly return if its only 1 char
-            return RESERVED.matcher(someString).replaceAll("\\\\$0");
+        return appendLiteral(new StringBuilder(someString.length()), someString).toString();
+    }
+
+    /**
+     * Appends a string as a regex literal to the given builder. Reserved
+     * chars are escaped, control and supplementary codepoints are written
+     * as hex escapes.
+     *
+     * @param expression target builder
+     * @param someString string to escape
+     * @return the same builder
+     */
+    public static StringBuilder appendLiteral(final StringBuilder expression, final CharSequence someString) {
+        for (int i = 0; i < someString.length(); ) {
+            final int codepoint = Character.codePointAt(someString, i); // always a complete codepoint
+            appendEscaped(expression, codepoint, LITERAL);
+            i += Character.charCount(codepoint);
+        }
+        return expression;
+    }
+
+    /**
+     * Appends a single codepoint as a regex literal. i.e. * => \*
+     *
+     * @param expression target builder
+     * @param codepoint  codepoint to escape
+     * @return the same builder
+     */
+    public static StringBuilder appendLiteral(final StringBuilder expression, final int codepoint) {
+        return appendEscaped(expression, codepoint, LITERAL);
+    }
+
+    /**
+     * Appends a single codepoint as an element of a set expression.
+     * i.e. ] => \] and U+1F31A => \x{1f31a}
+     *
+     * @param expression target builder
+     * @param codepoint  codepoint to escape
+     * @return the same builder
+     */
+    public static StringBuilder appendSetElement(final StringBuilder expression, final int codepoint) {
+        return appendEscaped(expression, codepoint, SET);
+    }
+
+    /**
+     * Returns the number of chars {@link #appendSetElement(StringBuilder, int)}
+     * would append for a codepoint, without encoding it.
+     *
+     * @param codepoint codepoint to measure
+     * @return encoded length
+     */
+    public static int setElementLength(final int codepoint) {
+        if (Character.isISOControl(codepoint)) return 4; // \xHH
+        if (codepoint < ESCAPES.length) return (ESCAPES[codepoint] & SET) != 0 ? 2 : 1;
+        if (Character.isBmpCodePoint(codepoint) && !Character.isSurrogate((char) codepoint)) return 1;
+        return 5 + ((31 - Integer.numberOfLeadingZeros(codepoint)) >>> 2); // \x{...}
+    }
+
+    /**
+     * Appends the only codepoint of a set expression without the brackets.
+     * It's escaped both as a literal and as a set element. So, a single
+     * element set keeps the escapes it would have inside the brackets.
+     * i.e. [*] => \* and ["] => \"
+     *
+     * @param expression target builder
+     * @param codepoint  codepoint to escape
+     * @return the same builder
+     */
+    public static StringBuilder appendSetLiteral(final StringBuilder expression, final int codepoint) {
+        return appendEscaped(expression, codepoint, (byte) (LITERAL | SET));
+    }
+
+    private static StringBuilder appendEscaped(final StringBuilder expression, final int codepoint,
+                                               final byte context) {
+
+        // RE2 only accepts the \x00 style for control chars. It does not
+        // allow the \x0 syntax. So, they are always 2-digit hex values.
+        if (Character.isISOControl(codepoint)) {
+            return expression
+                    .append(BACKSLASH).append('x')
+                    .append(UPPER_HEX[codepoint >>> 4])
+                    .append(UPPER_HEX[codepoint & 0xF]);
         }
-        final StringBuilder composed = new StringBuilder();
-        for (int i = 0; i < someString.toCharArray().length; i++) {
-            int codepoint = someString.codePointAt(i); // always returns a complete codepoint
-            if (Character.isSupplementaryCodePoint(codepoint)) {
-                composed.append(String.format("\\x{%s}", Integer.toHexString(codepoint)));
-                i++; // Skip the next character because it's an high-surrogate
-            } else { // definitely an BMP codepoint character
-                String val = String.valueOf(someString.charAt(i));
-                composed.append(RESERVED.matches(val) ? BACKSLASH : "").append(val);
-            }
+
+        if (codepoint < ESCAPES.length) {
+            if ((ESCAPES[codepoint] & context) != 0) expression.append(BACKSLASH);
+            return expression.append((char) codepoint);
         }
-        return composed.toString();
+
+        // RE2J does not support surrogate pairs inside sets and a lone
+        // surrogate can't be written as it is. So, both use \x{10FFFF}
+        if (Character.isBmpCodePoint(codepoint) && !Character.isSurrogate((char) codepoint)) {
+            return expression.append((char) codepoint);
+        }
+        expression.append(BACKSLASH).append('x').append('{');
+        for (int shift = (31 - Integer.numberOfLeadingZeros(codepoint)) & ~3; shift >= 0; shift -= 4) {
+            expression.append(HEX[(codepoint >>> shift) & 0xF]);
+        }
+        return expression.append('}');
+
     }
 
     /**
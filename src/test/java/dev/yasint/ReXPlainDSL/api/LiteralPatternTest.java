@@ -0,0 +1,126 @@
+package dev.yasint.ReXPlainDSL.api;
+
+import com.google.re2j.Matcher;
+import com.google.re2j.Pattern;
+import dev.yasint.RexPlainDSL.api.CompiledPattern;
+import dev.yasint.RexPlainDSL.api.LiteralPattern;
+import dev.yasint.RexPlainDSL.api.PatternMatcher;
+import dev.yasint.RexPlainDSL.api.ReXPlainDSL;
+import dev.yasint.RexPlainDSL.api.ShardedPattern;
+import dev.yasint.RexPlainDSL.complex.AhoCorasick;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static dev.yasint.RexPlainDSL.dsl.Anchors.wordBoundary;
+import static dev.yasint.RexPlainDSL.dsl.Groups.captureGroup;
+import static dev.yasint.RexPlainDSL.dsl.Groups.namedCaptureGroup;
+import static dev.yasint.RexPlainDSL.dsl.Literals.literal;
+import static dev.yasint.RexPlainDSL.dsl.Operators.eitherStr;
+import static dev.yasint.RexPlainDSL.dsl.Operators.eitherStrCaseFolded;
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class LiteralPatternTest {
+
+    private static List<String> findAll(final Matcher matcher) {
+        final List<String> matches = new ArrayList<>();
+        while (matcher.find()) matches.add(matcher.start() + ":" + matcher.group());
+        return matches;
+    }
+
+    private static List<String> findAll(final PatternMatcher matcher) {
+        final List<String> matches = new ArrayList<>();
+        while (matcher.find()) matches.add(matcher.start() + ":" + matcher.group());
+        return matches;
+    }
+
+    @Test
+    public void itShouldPickTheEngineByTheShapeOfTheExpression() {
+        final ReXPlainDSL.Flags[] none = {};
+        final ReXPlainDSL.Flags[] foldCase = {ReXPlainDSL.Flags.CASE_INSENSITIVE};
+        assertTrue(ReXPlainDSL.compilePattern(none, eitherStr("jan", "feb")) instanceof LiteralPattern);
+        assertTrue(ReXPlainDSL.compilePattern(null, wordBoundary(), eitherStr("jan", "feb"), wordBoundary())
+                instanceof LiteralPattern);
+        assertTrue(ReXPlainDSL.compilePattern(foldCase, eitherStr("jan", "feb")) instanceof ShardedPattern);
+        assertTrue(ReXPlainDSL.compilePattern(none, literal("jan")) instanceof ShardedPattern);
+
+        final CompiledPattern words = ReXPlainDSL.compilePattern(none, wordBoundary(), eitherStr("jan", "feb"), wordBoundary());
+        assertEquals(Arrays.asList("0:jan", "9:feb"), findAll(words.matcher("jan jane feb")));
+        assertTrue(words.matches("feb"));
+        assertFalse(words.matches("febr"));
+        final CompiledPattern folded = ReXPlainDSL.compilePattern(foldCase, wordBoundary(), eitherStr("jan"), wordBoundary());
+        assertEquals(Arrays.asList("0:JAN"), findAll(folded.matcher("JAN JANE")));
+    }
+
+    @Test
+    public void itShouldKeepTheCaptureGroupsOfAnyOtherExpression() {
+        final CompiledPattern dates = ReXPlainDSL.compilePattern(null,
+                namedCaptureGroup("month", eitherStr("jan", "feb")), literal("-"), captureGroup(literal("01")));
+        assertTrue(dates instanceof ShardedPattern);
+        final PatternMatcher matcher = dates.matcher("x feb-01 jan-01");
+        assertEquals(2, matcher.groupCount());
+        assertTrue(matcher.find());
+        assertEquals("feb-01", matcher.group(0));
+        assertEquals("feb", matcher.group("month"));
+        assertEquals("01", matcher.group(2));
+        assertTrue(matcher.find());
+        assertEquals("jan", matcher.group(1));
+        assertFalse(matcher.find());
+        assertThrows(IllegalStateException.class, () -> matcher.group(1));
+
+        final PatternMatcher words = ReXPlainDSL.compilePattern(null, eitherStr("jan", "feb")).matcher("feb");
+        assertEquals(0, words.groupCount());
+        assertTrue(words.matches());
+        assertEquals("feb", words.group(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> words.group(1));
+        assertThrows(IllegalArgumentException.class, () -> words.group("month"));
+    }
+
+    @Test
+    public void itShouldMatchACaseFoldedTrieCaseInsensitively() {
+        final ReXPlainDSL.Flags[] none = {};
+        final ReXPlainDSL.Flags[] foldCase = {ReXPlainDSL.Flags.CASE_INSENSITIVE};
+        assertTrue(ReXPlainDSL.compilePattern(foldCase, eitherStrCaseFolded("jan", "feb")) instanceof LiteralPattern);
+        assertTrue(ReXPlainDSL.compilePattern(none, eitherStrCaseFolded("jan", "feb")) instanceof ShardedPattern);
+
+        final CompiledPattern months = ReXPlainDSL.compilePattern(foldCase,
+                wordBoundary(), eitherStrCaseFolded("Jan", "Feb", "Kelvin"), wordBoundary());
+        assertEquals(Arrays.asList("0:jan", "9:FeB", "13:kELVIN"), findAll(months.matcher("jan Jane FeB kELVIN")));
+        assertTrue(months.matches("JAN"));
+        assertFalse(months.matches("JANE"));
+    }
+
+    @Test
+    public void itShouldMatchLikeTheAlternation() {
+        final Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            final List<String> words = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final StringBuilder word = new StringBuilder();
+                for (int j = random.nextInt(5); j > 0; j--) word.append("ab ".charAt(random.nextInt(3)));
+                words.add(word.toString());
+            }
+            final StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 40; j++) text.append("abc ".charAt(random.nextInt(4)));
+
+            final TrieExpression trie = new TrieExpression();
+            trie.insertAll(words);
+            final String longest = "\\b" + trie.toRegex() + "\\b";
+            assertEquals(
+                    findAll(Pattern.compile(longest).matcher(text)),
+                    findAll(LiteralPattern.compile(trie, true).matcher(text))
+            );
+
+            final String first = "(?:" + String.join("|", words) + ")";
+            assertEquals(
+                    findAll(Pattern.compile(first).matcher(text)),
+                    findAll(LiteralPattern.compile(words, AhoCorasick.MatchKind.LEFTMOST_FIRST, false).matcher(text))
+            );
+        }
+    }
+
+}
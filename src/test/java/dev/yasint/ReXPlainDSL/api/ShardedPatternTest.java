@@ -0,0 +1,83 @@
+package dev.yasint.ReXPlainDSL.api;
+
+import com.google.re2j.Matcher;
+import com.google.re2j.Pattern;
+import dev.yasint.RexPlainDSL.api.ReXPlainDSL;
+import dev.yasint.RexPlainDSL.api.ShardedMatcher;
+import dev.yasint.RexPlainDSL.api.ShardedPattern;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ShardedPatternTest {
+
+    private static List<String> findAll(final Matcher matcher) {
+        final List<String> matches = new ArrayList<>();
+        while (matcher.find()) matches.add(matcher.start() + ":" + matcher.group());
+        return matches;
+    }
+
+    private static List<String> findAll(final ShardedMatcher matcher) {
+        final List<String> matches = new ArrayList<>();
+        while (matcher.find()) matches.add(matcher.start() + ":" + matcher.group());
+        return matches;
+    }
+
+    @Test
+    public void itShouldKeepSmallTriesInOnePattern() {
+        final TrieExpression trie = new TrieExpression();
+        trie.insertAll(Arrays.asList("jan", "feb", "mar"));
+        final ShardedPattern pattern = ShardedPattern.compile(trie, ReXPlainDSL.Flags.CASE_INSENSITIVE);
+        assertEquals(1, pattern.shards().size());
+        assertTrue(pattern.matches("FEB"));
+        assertFalse(pattern.matches("febr"));
+    }
+
+    @Test
+    public void itShouldFindTheLeftmostLongestMatchOfAllShards() {
+        final TrieExpression trie = new TrieExpression();
+        trie.insertAll(Arrays.asList("app", "apple", "application", "pie", "pineapple", "e"));
+        final ShardedPattern pattern = ShardedPattern.compile(trie, 6, true);
+        assertTrue(pattern.shards().size() > 2);
+
+        final String text = "an apple pie, pineapple and application pies";
+        final Matcher single = Pattern.compile(trie.toRegex().toString()).matcher(text);
+        assertEquals(findAll(single), findAll(pattern.matcher(text)));
+        assertEquals(
+                Arrays.asList("3:apple", "9:pie", "14:pineapple", "28:application", "40:pie"),
+                findAll(pattern.matcher(text))
+        );
+        final ShardedMatcher matcher = pattern.matcher(text);
+        assertTrue(matcher.find(20)); // inside pineapple
+        assertEquals(22, matcher.start());
+        assertEquals("e", matcher.group());
+        assertTrue(pattern.matches("pineapple"));
+        assertFalse(pattern.matches("pine"));
+        assertThrows(IllegalStateException.class, () -> pattern.matcher("xyz").group());
+    }
+
+    @Test
+    public void itShouldMatchLikeTheWholeTrie() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            final TrieExpression trie = new TrieExpression();
+            for (int i = 0; i < 40; i++) {
+                final StringBuilder word = new StringBuilder();
+                for (int j = random.nextInt(6); j > 0; j--) word.append((char) ('a' + random.nextInt(3)));
+                trie.insert(word.toString());
+            }
+            final StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 40; j++) text.append((char) ('a' + random.nextInt(4)));
+            final ShardedPattern pattern = ShardedPattern.compile(trie, 1 + random.nextInt(20), false);
+            final Matcher single = Pattern.compile(trie.toRegex().toString()).matcher(text);
+            assertEquals(findAll(single), findAll(pattern.matcher(text)));
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package dev.yasint.ReXPlainDSL.complex;
+
+import dev.yasint.RexPlainDSL.complex.AhoCorasick;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class AhoCorasickTest {
+
+    private static String find(final AhoCorasick automaton, final String input, final int from,
+                               final boolean wholeWords) {
+        final long match = automaton.find(input, from, wholeWords);
+        return match < 0 ? null : (match >>> 32) + ":" + (int) match;
+    }
+
+    @Test
+    public void shouldFindTheLeftmostLongestWord() {
+        final TrieExpression trie = new TrieExpression();
+        trie.insertAll(Arrays.asList("app", "apple", "pie", "pineapple", "e"));
+        final AhoCorasick automaton = AhoCorasick.of(trie);
+        assertEquals("0:9", find(automaton, "pineapple pie", 0, false));
+        assertEquals("3:4", find(automaton, "pineapple pie", 1, false)); // the e of pine
+        assertEquals("4:9", find(automaton, "pineapple pie", 4, false));
+        assertEquals("10:13", find(automaton, "pineapple pie", 9, false));
+        assertNull(find(automaton, "banana", 0, false));
+        assertTrue(automaton.matches("apple", false));
+        assertFalse(automaton.matches("appl", false));
+    }
+
+    @Test
+    public void shouldPreferTheFirstWordOfTheList() {
+        final AhoCorasick first = AhoCorasick.of(Arrays.asList("app", "apple"), AhoCorasick.MatchKind.LEFTMOST_FIRST);
+        final AhoCorasick longest = AhoCorasick.of(Arrays.asList("app", "apple"), AhoCorasick.MatchKind.LEFTMOST_LONGEST);
+        assertEquals("3:6", find(first, "an apple", 0, false));
+        assertEquals("3:8", find(longest, "an apple", 0, false));
+        final AhoCorasick reversed = AhoCorasick.of(Arrays.asList("apple", "app"), AhoCorasick.MatchKind.LEFTMOST_FIRST);
+        assertEquals("3:8", find(reversed, "an apple", 0, false));
+        assertEquals("3:6", find(reversed, "an apply", 0, false));
+    }
+
+    @Test
+    public void shouldOnlyMatchWholeWords() {
+        final AhoCorasick automaton = AhoCorasick.of(Arrays.asList("cat", "cats"), AhoCorasick.MatchKind.LEFTMOST_FIRST);
+        assertEquals("3:6", find(automaton, "concat cats", 0, false));
+        assertEquals("7:11", find(automaton, "concat cats", 0, true));
+        assertNull(find(automaton, "concat_cats", 0, true));
+        assertTrue(automaton.matches("cat", true));
+    }
+
+    @Test
+    public void shouldHandleSupplementaryCodepointsAndTheEmptyWord() {
+        final TrieExpression trie = new TrieExpression();
+        trie.insertAll(Arrays.asList("x\uD83C\uDF1Ay", "\uD83C\uDF1A"));
+        final AhoCorasick automaton = AhoCorasick.of(trie);
+        assertEquals("1:5", find(automaton, "ax\uD83C\uDF1Ay", 0, false));
+        assertEquals("2:4", find(automaton, "ax\uD83C\uDF1A", 0, false));
+
+        final AhoCorasick empty = AhoCorasick.of(Arrays.asList("", "a"), AhoCorasick.MatchKind.LEFTMOST_LONGEST);
+        assertEquals("0:0", find(empty, "ba", 0, false));
+        assertEquals("1:2", find(empty, "ba", 1, false));
+        assertEquals("2:2", find(empty, "ba", 2, false));
+        assertTrue(empty.matches("", false));
+    }
+
+}
@@ -0,0 +1,99 @@
+package dev.yasint.ReXPlainDSL.complex;
+
+import com.google.re2j.Pattern;
+import dev.yasint.RexPlainDSL.complex.DawgExpression;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
+import dev.yasint.RexPlainDSL.exceptions.GenericException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class DawgExpressionTest {
+
+    private static String minimize(final String... words) {
+        final DawgExpression dawgExpression = new DawgExpression();
+        dawgExpression.insertAll(Arrays.asList(words));
+        return dawgExpression.toRegex().toString();
+    }
+
+    @Test
+    public void shouldShareSuffixes() {
+        assertEquals("(?:jump|[tw]alk)ing", minimize("walking", "talking", "jumping"));
+        assertEquals("(?:bar|foo)\\.(?:com|org)", minimize("foo.com", "bar.org", "foo.org", "bar.com"));
+        assertEquals("t[ao]ps?", minimize("tap", "taps", "top", "tops"));
+        assertEquals("(?:[bc]ats?|rat)", minimize("cat", "bat", "rat", "cats", "bats"));
+    }
+
+    @Test
+    public void shouldShareSuffixesOfSomeAlternatives() {
+        assertEquals(
+                "(?:[bjp]ump|[dt]rump|zebra)ing",
+                minimize("bumping", "drumping", "jumping", "pumping", "trumping", "zebraing")
+        );
+        assertEquals(
+                "(?:(?:[bjp]|[dt]r)umping|zebra)",
+                minimize("bumping", "drumping", "jumping", "pumping", "trumping", "zebra")
+        );
+    }
+
+    @Test
+    public void shouldShareOptionalStates() {
+        assertEquals("a(?:bc?)?", minimize("a", "ab", "abc"));
+        assertEquals("x(?:[ab]|cd)?", minimize("x", "xa", "xb", "xcd"));
+        assertEquals("b?", minimize("", "b"));
+        assertEquals("(?:)", minimize());
+        assertEquals("(?:)", minimize(""));
+    }
+
+    @Test
+    public void shouldKeepSurrogatePairsAsSingleEdges() {
+        assertEquals(
+                "moon[\\x{1f31a}\\x{1f31b}]",
+                minimize("moon\uD83C\uDF1A", "moon\uD83C\uDF1B")
+        );
+    }
+
+    @Test
+    public void shouldRejectUnsortedInsertions() {
+        final DawgExpression dawgExpression = new DawgExpression();
+        dawgExpression.insert("b");
+        dawgExpression.insert("b");
+        assertThrows(GenericException.class, () -> dawgExpression.insert("a"));
+        dawgExpression.insert("c");
+        assertEquals("[bc]", dawgExpression.toRegex().toString());
+        dawgExpression.insert("cd"); // rendering doesn't freeze the automaton
+        assertEquals("(?:b|cd?)", dawgExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldMatchTheSameWordsAsTheTrie() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            final Set<String> words = new HashSet<>();
+            for (int i = random.nextInt(12); i >= 0; i--) words.add(randomWord(random));
+            final DawgExpression dawgExpression = new DawgExpression();
+            dawgExpression.insertAll(words);
+            final TrieExpression trieExpression = new TrieExpression();
+            trieExpression.insertAll(words);
+            final Pattern dawg = Pattern.compile(dawgExpression.toRegex().toString());
+            final Pattern trie = Pattern.compile(trieExpression.toRegex().toString());
+            for (final String word : words) assertTrue(dawg.matches(word));
+            for (int i = 0; i < 100; i++) {
+                final String input = randomWord(random);
+                assertEquals(trie.matches(input), dawg.matches(input), input);
+            }
+        }
+    }
+
+    private static String randomWord(final Random random) {
+        final StringBuilder word = new StringBuilder();
+        for (int length = random.nextInt(6); length > 0; length--) word.append("ab.cx".charAt(random.nextInt(5)));
+        return word.toString();
+    }
+
+}
@@ -2,9 +2,12 @@ package dev.yasint.ReXPlainDSL.complex;
 
 import com.google.re2j.Pattern;
 import dev.yasint.RexPlainDSL.api.ReXPlainDSL;
+import dev.yasint.RexPlainDSL.complex.RangeExpression;
 import org.junit.jupiter.api.Test;
 
 import static dev.yasint.RexPlainDSL.dsl.Numeric.integerRange;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class RangeExpressionTest {
@@ -21,4 +24,20 @@ public final class RangeExpressionTest {
         System.out.println(expression.pattern());
     }
 
+    @Test
+    public void itShouldServeRepeatedRangesFromTheCache() {
+        final String ports = "6553[0-5]|655[0-2][0-9]|65[0-4][0-9]{2}|6[0-4][0-9]{3}|[1-5][0-9]{4}|" +
+                "[1-9][0-9]{3}|[1-9][0-9]{2}|[1-9][0-9]|[1-9]";
+        final StringBuilder first = new RangeExpression(1, 65535).toRegex();
+        assertEquals(ports, first.toString());
+        first.insert(0, "0?"); // i.e. leadingZero, it must not leak into the cache
+        assertEquals(ports, new RangeExpression(1, 65535).toRegex().toString());
+
+        final Pattern codes = Pattern.compile(new RangeExpression(100, 599).toRegex().toString());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i >= 100 && i <= 599, codes.matches(String.valueOf(i)));
+        }
+        assertFalse(codes.matches("0100"));
+    }
+
 }
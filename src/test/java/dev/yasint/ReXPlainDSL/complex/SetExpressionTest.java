@@ -3,11 +3,16 @@ package dev.yasint.ReXPlainDSL.complex;
 import com.google.re2j.Pattern;
 import dev.yasint.RexPlainDSL.api.Expression;
 import dev.yasint.RexPlainDSL.api.ReXPlainDSL;
+import dev.yasint.RexPlainDSL.complex.SetExpression;
+import dev.yasint.RexPlainDSL.exceptions.InvalidCodepointException;
 import dev.yasint.RexPlainDSL.unicode.UnicodeScript;
 import org.junit.jupiter.api.Test;
 
+import java.util.stream.IntStream;
+
 import static dev.yasint.RexPlainDSL.dsl.CharClasses.*;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static dev.yasint.RexPlainDSL.dsl.CharClasses.Posix.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 public final class SetExpressionTest {
 
@@ -95,7 +100,219 @@ public final class SetExpressionTest {
                 includeUnicodeScript(simpleSetStr("-", "."), UnicodeScript.SINHALA, true)
         ).compile().patternInstance();
         System.out.println(expression.pattern());
-        assertEquals(expression.pattern(), "[\\-.\\P{Sinhala}]");
+        // '-' and '.' are not sinhala, so they're already part of \P{Sinhala}
+        assertEquals(expression.pattern(), "\\P{Sinhala}");
+    }
+
+    @Test
+    public void itShouldIntersectUnicodeClassesWithOtherSets() {
+        final Expression latin = intersection(
+                alphabetic(), includeUnicodeScript(new SetExpression(false), UnicodeScript.LATIN, false)
+        );
+        assertEquals(latin.toRegex().toString(), "[A-Za-z]");
+        final Expression greek = intersection(
+                rangedSetCp(0x0391, 0x03A9),
+                includeUnicodeScript(new SetExpression(false), UnicodeScript.GREEK, false)
+        );
+        assertEquals(greek.toRegex().toString(), "[\u0391-\u03A1\u03A3-\u03A9]");
+    }
+
+    @Test
+    public void itShouldSubtractFromAUnicodeClass() {
+        final SetExpression set = (SetExpression) difference(
+                includeUnicodeScript(new SetExpression(false), UnicodeScript.GREEK, false),
+                rangedSetCp(0x0391, 0x03A9)
+        );
+        assertTrue(set.contains(0x03B1));
+        assertFalse(set.contains(0x0391));
+        assertFalse(set.contains('a'));
+    }
+
+    @Test
+    public void itShouldEscapeASingleElementSetAsALiteral() {
+        final Pattern expression = new ReXPlainDSL(
+                simpleSetStr("*"), simpleSetStr("-"), simpleSetCp(0x1F31A)
+        ).compile().patternInstance();
+        assertEquals(expression.pattern(), "\\*\\-\\x{1f31a}");
+        assertTrue(expression.matches("*-\uD83C\uDF1A"));
+    }
+
+    @Test
+    public void itShouldStoreWideRangesAsSingleIntervals() {
+        final Expression set = union(
+                rangedSetCp(0x00, 0x10FFFF),
+                rangedSetCp(0x4E00, 0x9FFF)
+        );
+        assertEquals(set.toRegex().toString(), "[\\D\\d]");
+    }
+
+    @Test
+    public void itShouldMergeOverlappingAndAdjacentRanges() {
+        final Expression set = union(
+                union(rangedSetStr("a", "f"), rangedSetStr("g", "k")),
+                union(rangedSetStr("x", "z"), simpleSetStr("c", "w", "m"))
+        );
+        assertEquals(set.toRegex().toString(), "[a-kmw-z]");
+    }
+
+    @Test
+    public void itShouldSplitARangeBetweenTheBitmapAndAstralIntervals() {
+        final Expression set = union(rangedSetCp(0xFFF0, 0x1000F), simpleSetCp(0x41, 0x43));
+        assertEquals(set.toRegex().toString(), "[AC\uFFF0-\\x{1000f}]");
+    }
+
+    @Test
+    public void itShouldAnswerMembershipQueries() {
+        final SetExpression set = (SetExpression) union(
+                rangedSetStr("a", "z"),
+                rangedSetCp(0x1F311, 0x1F31D)
+        );
+        assertTrue(set.contains('a'));
+        assertTrue(set.contains('q'));
+        assertTrue(set.contains(0x1F315));
+        assertFalse(set.contains('A'));
+        assertFalse(set.contains(0x1F31E));
+        assertFalse(((SetExpression) notDigit()).contains('5'));
+        assertTrue(((SetExpression) notDigit()).contains('x'));
+    }
+
+    @Test
+    public void itShouldBuildASetFromUnorderedCodepoints() {
+        final SetExpression set = SetExpression.of('z', 'c', 0x1F31B, 'a', 'b', 0x1F31A, 'c', 0x1F31A, 'x');
+        assertEquals(set.toRegex().toString(), "[a-cxz\\x{1f31a}\\x{1f31b}]");
+        assertEquals(SetExpression.of().toRegex().toString(), "");
+        assertThrows(InvalidCodepointException.class, () -> SetExpression.of('a', 0x110000));
+    }
+
+    @Test
+    public void itShouldBuildASetFromACodepointStream() {
+        final SetExpression sequential = SetExpression.fromCodepoints(IntStream.rangeClosed(0x20, 0x1FFFF).filter(c -> c % 3 == 0));
+        final SetExpression parallel = SetExpression.fromCodepoints(IntStream.rangeClosed(0x20, 0x1FFFF).parallel().filter(c -> c % 3 == 0));
+        assertEquals(parallel.toRegex().toString(), sequential.toRegex().toString());
+        assertTrue(parallel.contains(0x1FFFE));
+        assertFalse(parallel.contains(0x1FFFF));
+    }
+
+    @Test
+    public void itShouldBuildASetFromText() {
+        assertEquals(SetExpression.fromText("hello world").toRegex().toString(), "[ dehlorw]");
+        final SetExpression set = SetExpression.fromText("moon \uD83C\uDF1A\uD83C\uDF1B");
+        assertTrue(set.contains(0x1F31A));
+        assertFalse(set.contains(0xD83C));
+        assertEquals(textSet("cabbage").toRegex().toString(), "[a-ceg]");
+    }
+
+    @Test
+    public void itShouldNotModifyTheOperandsOfASetOperation() {
+        final Expression setA = rangedSetStr("a", "z");
+        final Expression setB = simpleSetStr("x", "y", "z", "0");
+        assertEquals(union(setA, setB).toRegex().toString(), "[0a-z]");
+        assertEquals(intersection(setA, setB).toRegex().toString(), "[x-z]");
+        assertEquals(difference(setA, setB).toRegex().toString(), "[a-w]");
+        assertEquals(negated(setA).toRegex().toString(), "[^a-z]");
+        // operands are still the same after every operation
+        assertEquals(setA.toRegex().toString(), "[a-z]");
+        assertEquals(setB.toRegex().toString(), "[0x-z]");
+        assertEquals(union(setA, setB).toRegex().toString(), "[0a-z]");
+    }
+
+    @Test
+    public void itShouldComputeTheUnionWithANegatedSet() {
+        // [a-c] | [^a] => everything except nothing
+        final SetExpression all = (SetExpression) union(rangedSetStr("a", "c"), negated(simpleSetStr("a")));
+        assertTrue(all.contains('a'));
+        assertTrue(all.contains('z'));
+        assertEquals(all.toRegex().toString(), "[\\D\\d]");
+        // [a-c] | [^a-z] => [^d-z]
+        assertEquals(
+                union(rangedSetStr("a", "c"), negated(rangedSetStr("a", "z"))).toRegex().toString(),
+                "[^d-z]"
+        );
+    }
+
+    @Test
+    public void itShouldKeepNegatedSetsCompactThroughSetOperations() {
+        // \W & \D & \S => [^\x09-\x0D 0-9A-Z_a-z] => [^\x0B\w\s]
+        final Expression set = intersection(intersection(notWord(), notDigit()), notWhitespace());
+        assertEquals(set.toRegex().toString(), "[^\\x0B\\w\\s]");
+        // \W | \D => [^0-9] => \D
+        assertEquals(union(notWord(), notDigit()).toRegex().toString(), "\\D");
+        // [^a-z] - [0-9] => [^0-9a-z] => [A-Z_\W]
+        assertEquals(difference(negated(rangedSetStr("a", "z")), digit()).toRegex().toString(), "[A-Z_\\W]");
+        // [^0-9] - [^a-z] => [a-z]
+        assertEquals(difference(notDigit(), negated(rangedSetStr("a", "z"))).toRegex().toString(), "[a-z]");
+    }
+
+    @Test
+    public void itShouldEmitTheShortestEquivalentForm() {
+        // almost every codepoint => complemented form
+        final Expression set = difference(rangedSetCp(0x0000, 0x10FFFF), simpleSetStr("a", "e"));
+        assertEquals(set.toRegex().toString(), "[^ae]");
+        // exactly a known class => shorthand
+        assertEquals(rangedSetStr("0", "9").toRegex().toString(), "\\d");
+        // a known class in both polarities of the unicode hint
+        final Expression greek = includeUnicodeScript(new SetExpression(false), UnicodeScript.GREEK, false);
+        assertEquals(negated(greek).toRegex().toString(), "\\P{Greek}");
+    }
+
+    @Test
+    public void itShouldWriteOneMemberOfEachCaseOrbitWhenFolded() {
+        assertEquals(caseFolded(alphabetic()).toRegex().toString(), "[A-Z]");
+        assertEquals(caseFolded(rangedSetStr("a", "z")).toRegex().toString(), "[A-Z]");
+        assertEquals(caseFolded(word()).toRegex().toString(), "\\w");
+        assertEquals(caseFolded(simpleSetStr("a", "A")).toRegex().toString(), "[A]");
+        final SetExpression folded = (SetExpression) caseFolded(rangedSetStr("a", "z"));
+        assertTrue(folded.contains('Q'));
+        assertTrue(folded.contains(0x212A)); // kelvin sign folds to k
+        assertTrue(folded.contains(0x017F)); // long s folds to s
+        assertFalse(folded.contains('0'));
+    }
+
+    @Test
+    public void itShouldMatchTheSameTextWhenFoldedUnderCaseInsensitiveFlag() {
+        final Expression[] sets = {
+                alphabetic(), union(hexDigit(), simpleSetStr("x", "\u03C3")), negated(rangedSetStr("a", "f")),
+                difference(negated(rangedSetStr("a", "z")), digit()), rangedSetCp(0x10400, 0x10427)
+        };
+        final ReXPlainDSL.Flags[] flags = {ReXPlainDSL.Flags.CASE_INSENSITIVE};
+        for (final Expression set : sets) {
+            final Pattern folded = ReXPlainDSL.compile(flags, caseFolded(set));
+            for (int cp = 0; cp < 0x10500; cp += cp < 0x600 ? 1 : 97) {
+                final String text = new String(Character.toChars(cp));
+                assertEquals(folded.matches(text), ((SetExpression) caseFolded(set)).contains(cp), text);
+            }
+        }
+    }
+
+    @Test
+    public void itShouldMatchLikeTheUnfoldedSetUnderCaseInsensitiveFlag() {
+        assertEquals(caseFolded(negated(simpleSetStr("a"))).toRegex().toString(), "[^A]");
+        final Expression[] sets = {
+                negated(rangedSetStr("A", "Q")), negated(simpleSetStr("a", "\u212A")),
+                negated(union(rangedSetStr("A", "Q"), rangedSetCp(0x887E2, 0x887E2))), rangedSetStr("a", "f")
+        };
+        final ReXPlainDSL.Flags[] flags = {ReXPlainDSL.Flags.CASE_INSENSITIVE};
+        for (final Expression set : sets) {
+            final Pattern plain = ReXPlainDSL.compile(flags, set);
+            final Pattern folded = ReXPlainDSL.compile(flags, caseFolded(set));
+            for (int cp = 0; cp < 0x10500; cp += cp < 0x600 ? 1 : 97) {
+                final String text = new String(Character.toChars(cp));
+                assertEquals(plain.matches(text), folded.matches(text), text);
+            }
+            assertEquals(plain.matches("\uD9E1\uDFE2"), folded.matches("\uD9E1\uDFE2"));
+        }
+    }
+
+    @Test
+    public void itShouldKeepSetsFoldedThroughSetOperations() {
+        final Expression set = union(caseFolded(rangedSetStr("a", "c")), rangedSetStr("x", "z"));
+        assertEquals(set.toRegex().toString(), "[A-CX-Z]");
+        assertEquals(((SetExpression) caseFolded(rangedSetStr("a", "c"))).withChar('q').toRegex().toString(), "[A-CQ]");
+    }
+
+    @Test
+    public void itShouldComplementANegatedSet() {
+        assertEquals(negated(negated(rangedSetStr("a", "z"))).toRegex().toString(), "[a-z]");
     }
 
 }
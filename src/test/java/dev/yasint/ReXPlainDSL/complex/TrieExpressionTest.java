@@ -1,9 +1,27 @@
 package dev.yasint.ReXPlainDSL.complex;
 
+import com.google.re2j.Pattern;
 import dev.yasint.RexPlainDSL.complex.TrieExpression;
+import dev.yasint.RexPlainDSL.exceptions.GenericException;
+import dev.yasint.RexPlainDSL.util.Common;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public final class TrieExpressionTest {
 
@@ -25,4 +43,369 @@ public final class TrieExpressionTest {
         );
     }
 
+    @Test
+    public void shouldMergeSiblingsWithIdenticalSubtrees() {
+        TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("cat", "bat", "hat", "rat"));
+        assertEquals("[bchr]at", trieExpression.toRegex().toString());
+
+        trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("cart", "dart", "mart", "walking", "talking", "jumping", "bumping"));
+        assertEquals("(?:[bj]umping|[cdm]art|[tw]alking)", trieExpression.toRegex().toString());
+
+        // merged on every level, an optional tail is shared as well
+        trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("xab", "xcb", "yab", "ycb", "xa", "xc", "ya", "yc", "z"));
+        assertEquals("(?:[xy][ac]b?|z)", trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldSplitMergedSiblingsAfterInserting() {
+        TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("cat", "bat", "hat"));
+        assertEquals("[bch]at", trieExpression.toRegex().toString());
+        trieExpression.insert("cats");
+        assertEquals("(?:[bh]at|cats?)", trieExpression.toRegex().toString());
+        trieExpression.insert("bats");
+        assertEquals("(?:[bc]ats?|hat)", trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldKeepSurrogatePairsAsSingleEdges() {
+        TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insert("moon\uD83C\uDF1A");
+        trieExpression.insert("moon\uD83C\uDF1B");
+        trieExpression.insert("moon");
+        assertEquals(
+                "moon[\\x{1f31a}\\x{1f31b}]?",
+                trieExpression.toRegex().toString()
+        );
+    }
+
+    @Test
+    public void shouldRenderTheSameExpressionTwice() {
+        TrieExpression trieExpression = new TrieExpression();
+        assertEquals("(?:)", trieExpression.toRegex().toString());
+        trieExpression.insert("jun");
+        trieExpression.insert("jul");
+        assertEquals("ju[ln]", trieExpression.toRegex().toString());
+        assertEquals("ju[ln]", trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldRenderDeepTriesWithoutRecursion() {
+        TrieExpression trieExpression = new TrieExpression();
+        final StringBuilder path = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) path.append(i).append('/');
+        trieExpression.insert(path + "x");
+        trieExpression.insert(path + "y");
+        assertEquals(
+                Common.asRegexLiteral(path.toString()) + "[xy]",
+                trieExpression.toRegex().toString()
+        );
+
+        // every prefix is a word, the run is split into counted pieces
+        // so the engine doesn't compile a group per word
+        trieExpression = new TrieExpression();
+        final List<String> words = new ArrayList<>();
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i < 5_000; i++) words.add(word.append('a').toString());
+        trieExpression.insertAll(words);
+        final Pattern pattern = Pattern.compile(trieExpression.toRegex().toString());
+        for (final String w : words) assertTrue(pattern.matches(w));
+        assertFalse(pattern.matches(""));
+        assertFalse(pattern.matches(word.append('a').toString()));
+    }
+
+    @Test
+    public void shouldQuantifyRepeatedUnits() {
+        TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("a", "aa", "aaa", "aaaa"));
+        assertEquals("a{1,4}", trieExpression.toRegex().toString());
+
+        trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("ab", "abab", "ababab", "000001", "000002"));
+        assertEquals("(?:0{5}[12]|(?:ab){1,3})", trieExpression.toRegex().toString());
+
+        // only words after the last units, the rest is written out
+        trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("xaaaaa", "xaaaaaaaaaa", "xaaaaaaaaaab"));
+        assertEquals("xa{5}(?:a{5}b?)?", trieExpression.toRegex().toString());
+
+        // no counted quantifier goes beyond the limit
+        trieExpression = new TrieExpression();
+        final String path = String.join("", Collections.nCopies(2_500, "a/"));
+        trieExpression.insert(path + "x");
+        trieExpression.insert(path + "y");
+        assertEquals(
+                "(?:a\\/){1000}".repeat(2) + "(?:a\\/){500}[xy]",
+                trieExpression.toRegex().toString()
+        );
+
+        // a run of words that reaches the limit is split before its tail
+        trieExpression = new TrieExpression();
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) trieExpression.insert(word.append('a').toString());
+        trieExpression.insert(word.append('b').toString());
+        assertEquals("(?:a{1,999}|a{1000}b?)", trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldSplitTheTrieIntoShards() {
+        final TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("app", "apple", "appeal", "application", "apply", "bat", "cat"));
+        assertEquals(
+                Collections.singletonList(trieExpression.toRegex().toString()),
+                trieExpression.toShards(100)
+        );
+        // every shard keeps the path to the node it's split at
+        assertEquals(
+                Arrays.asList("[bc]at", "app(?:eal)?", "appl(?:ication|[ey])"),
+                trieExpression.toShards(12)
+        );
+        assertThrows(GenericException.class, () -> trieExpression.toShards(0));
+    }
+
+    @Test
+    public void shouldRenderAgainAfterInsertingIntoARenderedTrie() {
+        TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("jun", "jul", "aug", "a"));
+        assertEquals("(?:a(?:ug)?|ju[ln])", trieExpression.toRegex().toString());
+        trieExpression.insert("jan");
+        trieExpression.insert("au");
+        assertEquals("(?:a(?:ug?)?|j(?:an|u[ln]))", trieExpression.toRegex().toString());
+        assertEquals("(?:a(?:ug?)?|j(?:an|u[ln]))", trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldRenderAgainAfterRemovingFromARenderedTrie() {
+        TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("cat", "cats", "car", "bat", "b"));
+        assertEquals("(?:b(?:at)?|ca(?:ts?|r))", trieExpression.toRegex().toString());
+        assertTrue(trieExpression.remove("cats"));
+        assertFalse(trieExpression.remove("cats"));
+        assertFalse(trieExpression.remove("ca"));
+        assertFalse(trieExpression.remove("dog"));
+        assertEquals("(?:b(?:at)?|ca[rt])", trieExpression.toRegex().toString());
+        assertTrue(trieExpression.removeAll(Arrays.asList("b", "car")));
+        assertEquals("[bc]at", trieExpression.toRegex().toString());
+        assertTrue(trieExpression.insert("cow")); // reuses the removed nodes
+        assertFalse(trieExpression.insert("cow"));
+        assertEquals("(?:bat|c(?:at|ow))", trieExpression.toRegex().toString());
+        trieExpression.removeAll(Arrays.asList("bat", "cat", "cow"));
+        assertEquals("(?:)", trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldTellWhetherTheExpressionChanged() {
+        TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("jan", "feb"));
+        final TrieExpression.Revision first = trieExpression.revision(null);
+        assertTrue(first.changed());
+        assertEquals("(?:feb|jan)", first.expression());
+
+        final TrieExpression.Revision same = trieExpression.revision(first);
+        assertFalse(same.changed());
+        assertEquals(first.version(), same.version());
+
+        assertFalse(trieExpression.update(Collections.singletonList("jan"), Collections.singletonList("mar")));
+        trieExpression.remove("feb");
+        trieExpression.insert("feb");
+        final TrieExpression.Revision restored = trieExpression.revision(same);
+        assertTrue(restored.version() > same.version());
+        assertFalse(restored.changed());
+
+        assertTrue(trieExpression.update(Arrays.asList("mar", "feb"), Collections.singletonList("feb")));
+        final TrieExpression.Revision updated = trieExpression.revision(restored);
+        assertTrue(updated.changed());
+        assertEquals("(?:feb|jan|mar)", updated.expression());
+    }
+
+    @Test
+    public void shouldRenderFromManyThreadsWhileInserting() throws Exception {
+        final TrieExpression trieExpression = new TrieExpression();
+        final List<String> words = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) words.add(Integer.toString(i * 7919, 36));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> tasks = new ArrayList<>();
+            tasks.add(executor.submit(() -> words.forEach(trieExpression::insert)));
+            for (int t = 0; t < 3; t++) {
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) trieExpression.toRegex();
+                }));
+            }
+            for (final Future<?> task : tasks) task.get();
+        } finally {
+            executor.shutdown();
+        }
+        final TrieExpression expected = new TrieExpression();
+        expected.insertAll(words);
+        assertEquals(expected.toRegex().toString(), trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldBuildSubTriesInParallel() {
+        final List<String> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) words.add(Integer.toString(i * 7919, 36));
+        words.add("");
+        words.add("\uD83C\uDF1Amoon");
+
+        final TrieExpression expected = new TrieExpression();
+        expected.insert("1st");
+        words.forEach(expected::insert);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final TrieExpression trieExpression = new TrieExpression();
+            trieExpression.insert("1st"); // merged with the sub-trie of 1
+            trieExpression.insertAll(words, pool);
+            assertEquals(expected.toRegex().toString(), trieExpression.toRegex().toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldKeepTheVersionWhenInsertingExistingWordsInParallel() {
+        final List<String> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) words.add(Integer.toString(i * 7919, 36));
+        words.add("");
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final TrieExpression trieExpression = new TrieExpression();
+            trieExpression.insertAll(words, pool);
+            final TrieExpression.Revision first = trieExpression.revision(null);
+            trieExpression.insertAll(words, pool); // nothing new
+            trieExpression.insertAll(words.subList(0, 100), pool);
+            final TrieExpression.Revision same = trieExpression.revision(first);
+            assertEquals(first.version(), same.version());
+            assertFalse(same.changed());
+
+            trieExpression.insertAll(Arrays.asList(words.get(7), "zzzz"), pool); // one new word
+            final TrieExpression.Revision updated = trieExpression.revision(same);
+            assertEquals(same.version() + 1, updated.version());
+            final TrieExpression expected = new TrieExpression();
+            expected.insertAll(words);
+            expected.insert("zzzz");
+            assertEquals(expected.toRegex().toString(), updated.expression());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldInsertTheLinesOfAWordFile(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("words.txt");
+        final byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        final byte[] text = "jun\r\njul\n\naug\njun\n\uD83C\uDF1Amoon\nst\u00E5r".getBytes(StandardCharsets.UTF_8);
+        final byte[] content = Arrays.copyOf(bom, bom.length + text.length);
+        System.arraycopy(text, 0, content, bom.length, text.length);
+        Files.write(file, content);
+
+        final TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertFrom(file);
+        final TrieExpression expected = new TrieExpression();
+        expected.insertAll(Arrays.asList("jun", "jul", "aug", "\uD83C\uDF1Amoon", "st\u00E5r"));
+        assertEquals(expected.toRegex().toString(), trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldRejectMalformedWordFiles(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("words.txt");
+        final byte[][] malformed = {
+                {'a', (byte) 0xC3}, // truncated
+                {'a', (byte) 0xC0, (byte) 0x80}, // overlong
+                {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, // surrogate
+                {(byte) 0xE2, '\n', (byte) 0x82}, // interrupted
+        };
+        for (final byte[] content : malformed) {
+            Files.write(file, content);
+            assertThrows(MalformedInputException.class, () -> new TrieExpression().insertFrom(file));
+        }
+    }
+
+    @Test
+    public void shouldLeaveTheTrieAsItWasOnAMalformedWordFile(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("words.txt");
+        Files.write(file, new byte[]{'a', 'b', '\n', 'c', 'd', (byte) 0xC3, '\n'});
+        final TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insert("zz");
+        final long version = trieExpression.version();
+        assertEquals("zz", trieExpression.toRegex().toString());
+        assertThrows(MalformedInputException.class, () -> trieExpression.insertFrom(file));
+        assertFalse(trieExpression.contains("ab"));
+        assertFalse(trieExpression.contains("cd"));
+        assertEquals(version, trieExpression.version());
+        assertEquals("zz", trieExpression.toRegex().toString());
+
+        Files.write(file, "ab\ncd\nzz\n".getBytes(StandardCharsets.UTF_8));
+        trieExpression.insertFrom(file);
+        assertTrue(trieExpression.contains("cd"));
+        assertEquals("(?:ab|cd|zz)", trieExpression.toRegex().toString());
+    }
+
+    @Test
+    public void shouldMapAWrittenTrieBack(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("words.trie");
+        final TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insertAll(Arrays.asList("", "cat", "cats", "bat", "moon\uD83C\uDF1A", "dog"));
+        trieExpression.remove("dog"); // removed nodes are left out
+        trieExpression.writeTo(file);
+
+        final TrieExpression mapped = TrieExpression.mapFrom(file);
+        assertEquals(trieExpression.toRegex().toString(), mapped.toRegex().toString());
+        assertEquals(trieExpression.toShards(4), mapped.toShards(4));
+        assertTrue(mapped.contains("moon\uD83C\uDF1A"));
+        assertTrue(mapped.contains(""));
+        assertFalse(mapped.contains("dog"));
+        assertFalse(mapped.contains("ca"));
+        assertThrows(GenericException.class, () -> mapped.insert("dog"));
+        assertThrows(GenericException.class, () -> mapped.remove("cat"));
+    }
+
+    @Test
+    public void shouldRejectFilesThatAreNotTries(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("words.trie");
+        Files.write(file, "cat\nbat\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> TrieExpression.mapFrom(file));
+        final TrieExpression trieExpression = new TrieExpression();
+        trieExpression.insert("cat");
+        trieExpression.writeTo(file);
+        final byte[] truncated = Arrays.copyOf(Files.readAllBytes(file), 20);
+        Files.write(file, truncated);
+        assertThrows(IOException.class, () -> TrieExpression.mapFrom(file));
+    }
+
+    @Test
+    public void shouldStoreTheWordsCaseFolded(@TempDir final Path directory) throws IOException {
+        final List<String> months = Arrays.asList("Jan", "January", "Feb", "February", "May", "Sep", "Sept");
+        final List<String> spellings = new ArrayList<>();
+        for (final String month : months) {
+            spellings.addAll(Arrays.asList(month, month.toLowerCase(), month.toUpperCase()));
+        }
+        final TrieExpression trieExpression = new TrieExpression(true);
+        trieExpression.insertAll(spellings);
+        assertEquals("(?:FEB(?:RUARY)?|JAN(?:UARY)?|MAY|SEPT?)", trieExpression.toRegex().toString());
+        assertTrue(trieExpression.contains("sEpT"));
+        assertTrue(trieExpression.remove("sept"));
+        assertFalse(trieExpression.contains("Sept"));
+        assertFalse(trieExpression.insert("may"));
+
+        final Pattern pattern = Pattern.compile(trieExpression.toRegex().toString(), Pattern.CASE_INSENSITIVE);
+        assertTrue(pattern.matches("january"));
+        assertFalse(pattern.matches("june"));
+
+        final TrieExpression kelvin = new TrieExpression(true);
+        kelvin.insert("\u212Aelvin"); // the kelvin sign folds into K
+        assertTrue(kelvin.contains("kelvin"));
+
+        final Path file = directory.resolve("months.trie");
+        trieExpression.writeTo(file);
+        final TrieExpression mapped = TrieExpression.mapFrom(file);
+        assertTrue(mapped.foldsCase());
+        assertTrue(mapped.contains("february"));
+    }
+
 }
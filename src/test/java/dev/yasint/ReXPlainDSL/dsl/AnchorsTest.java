@@ -21,7 +21,7 @@ public final class AnchorsTest {
                 captureGroup(wordBoundary()
                         .debug(System.out::println), word())
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "(\\b[0-9A-Z_a-z])");
+        assertEquals(expression.pattern(), "(\\b\\w)");
     }
 
     @Test
@@ -30,7 +30,7 @@ public final class AnchorsTest {
                 nonWordBoundary(),
                 word()
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "\\B[0-9A-Z_a-z]");
+        assertEquals(expression.pattern(), "\\B\\w");
     }
 
     @Test
@@ -39,7 +39,7 @@ public final class AnchorsTest {
                 startOfLine(),
                 word()
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "^[0-9A-Z_a-z]");
+        assertEquals(expression.pattern(), "^\\w");
     }
 
     @Test
@@ -49,7 +49,7 @@ public final class AnchorsTest {
                 oneOrMoreTimes(word()),
                 endOfLine(false)
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "^(?:[0-9A-Z_a-z])+$");
+        assertEquals(expression.pattern(), "^(?:\\w)+$");
     }
 
     @Test
@@ -59,7 +59,7 @@ public final class AnchorsTest {
                 oneOrMoreTimes(word()),
                 endOfLine(true)
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "^(?:[0-9A-Z_a-z])+\\x0D?$");
+        assertEquals(expression.pattern(), "^(?:\\w)+\\x0D?$");
     }
 
     @Test
@@ -68,7 +68,7 @@ public final class AnchorsTest {
                 startOfText(),
                 word()
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "\\A[0-9A-Z_a-z]");
+        assertEquals(expression.pattern(), "\\A\\w");
     }
 
     @Test
@@ -77,7 +77,7 @@ public final class AnchorsTest {
                 word(),
                 endOfText()
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "[0-9A-Z_a-z]\\z");
+        assertEquals(expression.pattern(), "\\w\\z");
     }
 
     @Test
@@ -88,7 +88,7 @@ public final class AnchorsTest {
                         word()
                 )
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "^\\b[0-9A-Z_a-z]$");
+        assertEquals(expression.pattern(), "^\\b\\w$");
     }
 
     @Test
@@ -11,6 +11,7 @@ import static dev.yasint.RexPlainDSL.dsl.CharClasses.Posix.*;
 import static dev.yasint.RexPlainDSL.dsl.CharClasses.anything;
 import static dev.yasint.RexPlainDSL.dsl.Repetition.exactly;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 public final class CharClassesTest {
 
@@ -43,25 +44,25 @@ public final class CharClassesTest {
     @Test
     public void itShouldCreateCorrectPOSIXDigitCharClass() {
         final Expression set = digit();
-        assertEquals(set.toRegex().toString(), "[0-9]");
+        assertEquals(set.toRegex().toString(), "\\d");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXNotDigitCharClass() {
         final Expression set = notDigit();
-        assertEquals(set.toRegex().toString(), "[^0-9]");
+        assertEquals(set.toRegex().toString(), "\\D");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXAlphanumericCharClass() {
         final Expression set = alphanumeric();
-        assertEquals(set.toRegex().toString(), "[0-9A-Za-z]");
+        assertEquals(set.toRegex().toString(), "[^_\\W]");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXPunctCharClass() {
         final Expression set = punctuation();
-        assertEquals(set.toRegex().toString(), "[!-\\/:-@[-\\`{-~]");
+        assertEquals(set.toRegex().toString(), "[[:punct:]]");
     }
 
     @Test
@@ -85,37 +86,37 @@ public final class CharClassesTest {
     @Test
     public void itShouldCreateCorrectPOSIXHexDigitCharClass() {
         final Expression set = hexDigit();
-        assertEquals(set.toRegex().toString(), "[0-9A-Fa-f]");
+        assertEquals(set.toRegex().toString(), "[A-Fa-f\\d]");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXWhitespaceCharClass() {
         final Expression set = whitespace();
-        assertEquals(set.toRegex().toString(), "[\\x09-\\x0D ]");
+        assertEquals(set.toRegex().toString(), "[\\x0B\\s]");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXNonWhitespaceCharClass() {
         final Expression set = notWhitespace();
-        assertEquals(set.toRegex().toString(), "[^\\x09-\\x0D ]");
+        assertEquals(set.toRegex().toString(), "[^\\x0B\\s]");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXWordCharClass() {
         final Expression set = word();
-        assertEquals(set.toRegex().toString(), "[0-9A-Z_a-z]");
+        assertEquals(set.toRegex().toString(), "\\w");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXWorNotWordCharClass() {
         final Expression set = notWord();
-        assertEquals(set.toRegex().toString(), "[^0-9A-Z_a-z]");
+        assertEquals(set.toRegex().toString(), "\\W");
     }
 
     @Test
     public void itShouldCreateCorrectPOSIXControlCharClass() {
         final Expression set = control();
-        assertEquals(set.toRegex().toString(), "[\\x00-\\x1F\\x7F]");
+        assertEquals(set.toRegex().toString(), "[[:cntrl:]]");
     }
 
     @Test
@@ -165,4 +166,15 @@ public final class CharClassesTest {
         assertEquals(regexSet.toRegex().toString(), "[\\x{1f311}-\\x{1f31d}]");
     }
 
+    @Test
+    public void itShouldReuseThePrecomputedPOSIXClasses() {
+        assertSame(alphanumeric(), alphanumeric());
+        assertSame(notWord(), notWord());
+        assertSame(carriageReturn(), carriageReturn());
+        // deriving a new set must leave the shared constant untouched
+        final Expression hex = CharClasses.union(digit(), CharClasses.rangedSetStr("a", "f"));
+        assertEquals(hex.toRegex().toString(), "[a-f\\d]");
+        assertEquals(digit().toRegex().toString(), "\\d");
+    }
+
 }
@@ -6,11 +6,14 @@ import dev.yasint.RexPlainDSL.exceptions.InvalidGroupNameException;
 import org.junit.jupiter.api.Test;
 
 import static dev.yasint.RexPlainDSL.dsl.CharClasses.Posix.*;
+import static dev.yasint.RexPlainDSL.dsl.CharClasses.caseFolded;
 import static dev.yasint.RexPlainDSL.dsl.CharClasses.union;
+import static dev.yasint.RexPlainDSL.dsl.Groups.caseInsensitiveGroup;
 import static dev.yasint.RexPlainDSL.dsl.Groups.namedCaptureGroup;
 import static dev.yasint.RexPlainDSL.dsl.Groups.nonCaptureGroup;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class GroupsTest {
 
@@ -19,7 +22,16 @@ public final class GroupsTest {
         final Pattern pattern = new ReXPlainDSL(
                 nonCaptureGroup(digit())
         ).compile().patternInstance();
-        assertEquals(pattern.pattern(), "(?:[0-9])");
+        assertEquals(pattern.pattern(), "(?:\\d)");
+    }
+
+    @Test
+    public void itShouldCreateACaseInsensitiveGroup() {
+        final Pattern pattern = new ReXPlainDSL(
+                caseInsensitiveGroup(caseFolded(alphabetic())), alphabetic()
+        ).compile().patternInstance();
+        assertEquals(pattern.pattern(), "(?i:[A-Z])[A-Za-z]");
+        assertTrue(pattern.matches("xY"));
     }
 
     @Test
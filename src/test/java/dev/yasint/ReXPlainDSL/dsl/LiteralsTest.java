@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import static dev.yasint.RexPlainDSL.dsl.Literals.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class LiteralsTest {
 
@@ -18,6 +19,16 @@ public final class LiteralsTest {
         assertEquals(pattern.pattern(), "https:\\/\\/swtch\\.com\\/~rsc\\/regexp&id\\=1");
     }
 
+    @Test
+    public void itShouldFoldTheCaseOfALiteral() {
+        Pattern pattern = new ReXPlainDSL(
+                literal("Jan.", true)
+        ).compile(ReXPlainDSL.Flags.CASE_INSENSITIVE).patternInstance();
+        assertEquals(pattern.pattern(), "JAN\\.");
+        assertTrue(pattern.matches("jan."));
+        assertEquals(literal("Jan.", false).toRegex().toString(), "Jan\\.");
+    }
+
     @Test
     public void itShouldCreateStrictQuoteString() {
         Pattern pattern = new ReXPlainDSL(
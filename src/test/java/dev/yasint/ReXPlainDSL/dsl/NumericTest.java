@@ -1,11 +1,15 @@
 package dev.yasint.ReXPlainDSL.dsl;
 
+import com.google.re2j.Pattern;
 import dev.yasint.RexPlainDSL.api.Expression;
+import dev.yasint.RexPlainDSL.exceptions.NumericRangeException;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
+
 import static dev.yasint.RexPlainDSL.dsl.Numeric.integerRange;
 import static dev.yasint.RexPlainDSL.dsl.Numeric.leadingZero;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public final class NumericTest {
 
@@ -38,4 +42,33 @@ public final class NumericTest {
                 .toRegex().toString(), "(?:0?(?:1[0-2]|[1-9]))");
     }
 
+    @Test
+    public void itShouldHandleLongIntegerRanges() {
+        final long from = 1_600_000_000_000L, to = 1_699_999_999_999L; // epoch millis
+        assertEquals(integerRange(from, to).toRegex().toString(), "(?:16[0-9]{11})");
+        final Pattern ids = Pattern.compile(integerRange(1L, Long.MAX_VALUE).toRegex().toString());
+        assertTrue(ids.matches(String.valueOf(Long.MAX_VALUE)));
+        assertFalse(ids.matches("9223372036854775808"));
+        assertFalse(ids.matches("0"));
+    }
+
+    @Test
+    public void itShouldHandleArbitraryPrecisionIntegerRanges() {
+        final BigInteger from = new BigInteger("10000000000000000000000"), to = new BigInteger("10000000000000000012345");
+        final Pattern accounts = Pattern.compile(integerRange(from, to).toRegex().toString());
+        assertTrue(accounts.matches(from.toString()));
+        assertTrue(accounts.matches(to.toString()));
+        assertTrue(accounts.matches("10000000000000000009999"));
+        assertFalse(accounts.matches("10000000000000000012346"));
+        assertFalse(accounts.matches("9999999999999999999999"));
+        assertEquals(integerRange(BigInteger.ONE, BigInteger.TEN).toRegex().toString(), "(?:10|[1-9])");
+    }
+
+    @Test
+    public void itShouldRejectNegativeOrUnorderedRanges() {
+        assertThrows(NumericRangeException.class, () -> integerRange(-1, 10));
+        assertThrows(NumericRangeException.class, () -> integerRange(10L, 1L));
+        assertThrows(NumericRangeException.class, () -> integerRange(BigInteger.valueOf(-5), BigInteger.TEN));
+    }
+
 }
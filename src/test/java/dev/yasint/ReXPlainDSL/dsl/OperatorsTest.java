@@ -5,10 +5,13 @@ import dev.yasint.RexPlainDSL.api.ReXPlainDSL;
 import dev.yasint.RexPlainDSL.dsl.Operators;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
 import static dev.yasint.RexPlainDSL.dsl.CharClasses.Posix.*;
 import static dev.yasint.RexPlainDSL.dsl.Operators.concat;
 import static dev.yasint.RexPlainDSL.dsl.Operators.either;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public final class OperatorsTest {
 
@@ -17,7 +20,7 @@ public final class OperatorsTest {
         Pattern pattern = new ReXPlainDSL(
                 either(digit(), uppercase(), lowercase())
         ).compile().patternInstance();
-        assertEquals(pattern.pattern(), "(?:[0-9]|[A-Z]|[a-z])");
+        assertEquals(pattern.pattern(), "(?:\\d|[A-Z]|[a-z])");
     }
 
     @Test
@@ -28,12 +31,32 @@ public final class OperatorsTest {
         assertEquals(pattern.pattern(), "(?:https?|wss?)");
     }
 
+    @Test
+    public void itShouldShareSuffixesBetweenMultipleStrings() {
+        Pattern pattern = new ReXPlainDSL(
+                Operators.eitherStrSet(new HashSet<>(Arrays.asList("foo.com", "foo.org", "bar.com", "bar.org")), true)
+        ).compile().patternInstance();
+        assertEquals(pattern.pattern(), "(?:bar|foo)\\.(?:com|org)");
+        assertTrue(pattern.matches("bar.org"));
+        assertFalse(pattern.matches("bar.net"));
+    }
+
+    @Test
+    public void itShouldCreateACaseFoldedAlternation() {
+        Pattern pattern = new ReXPlainDSL(
+                Operators.eitherStrCaseFolded("Jan", "JAN", "jan", "Feb", "february")
+        ).compile(ReXPlainDSL.Flags.CASE_INSENSITIVE).patternInstance();
+        assertEquals(pattern.pattern(), "(?:FEB(?:RUARY)?|JAN)");
+        assertTrue(pattern.matches("February"));
+        assertFalse(pattern.matches("June"));
+    }
+
     @Test
     public void itShouldConcatMultipleExpressionsIntoOne() {
         Pattern pattern = new ReXPlainDSL(
                 concat(digit(), punctuation())
         ).compile().patternInstance();
-        assertEquals(pattern.pattern(), "[0-9][!-\\/:-@[-\\`{-~]");
+        assertEquals(pattern.pattern(), "\\d[[:punct:]]");
     }
 
 }
@@ -17,7 +17,7 @@ public final class RepetitionTest {
         Pattern expression = new ReXPlainDSL(
                 oneOrMoreTimes(digit())
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9])+");
+        assertEquals(expression.pattern(), "(?:\\d)+");
     }
 
     @Test
@@ -25,18 +25,18 @@ public final class RepetitionTest {
         Pattern expression = new ReXPlainDSL(
                 zeroOrMoreTimes(digit())
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9])*");
+        assertEquals(expression.pattern(), "(?:\\d)*");
     }
 
     @Test
     public void itShouldAppendExactlyOrMoreTimesQuantifierToExpression() {
         Pattern expression;
         expression = new ReXPlainDSL(exactlyOrMoreTimes(2, digit())).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9]){2,}");
+        assertEquals(expression.pattern(), "(?:\\d){2,}");
         expression = new ReXPlainDSL(exactlyOrMoreTimes(0, digit())).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9])*");
+        assertEquals(expression.pattern(), "(?:\\d)*");
         expression = new ReXPlainDSL(exactlyOrMoreTimes(1, digit())).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9])+");
+        assertEquals(expression.pattern(), "(?:\\d)+");
     }
 
     @Test
@@ -44,7 +44,7 @@ public final class RepetitionTest {
         Pattern expression = new ReXPlainDSL(
                 optional(digit())
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9])?");
+        assertEquals(expression.pattern(), "(?:\\d)?");
     }
 
     @Test
@@ -52,7 +52,7 @@ public final class RepetitionTest {
         Pattern expression = new ReXPlainDSL(
                 exactly(5, digit())
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9]){5}");
+        assertEquals(expression.pattern(), "(?:\\d){5}");
     }
 
     @Test
@@ -60,7 +60,7 @@ public final class RepetitionTest {
         Pattern expression = new ReXPlainDSL(
                 between(5, 10, digit())
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9]){5,10}");
+        assertEquals(expression.pattern(), "(?:\\d){5,10}");
     }
 
     @Test
@@ -68,7 +68,7 @@ public final class RepetitionTest {
         Pattern expression = new ReXPlainDSL(
                 lazy(between(5, 10, digit()))
         ).compile().patternInstance();
-        assertEquals(expression.pattern(), "(?:[0-9]){5,10}?");
+        assertEquals(expression.pattern(), "(?:\\d){5,10}?");
     }
 
     // Checking for syntax errors
@@ -127,10 +127,10 @@ public class VivaDemoTest {
         assertEquals(expression.pattern(), "(?:(?P<rgba_codes>rgba?\\((?:25[0-5]|2[0-4][0-9]|1[0-9]" +
                 "{2}|[1-9][0-9]|[0-9])(?:,(?: )?)(?:25[0-5]|2[0-4][0-9]|1[0-9]{2}|[1-9][0-9]|[0-9])(?" +
                 ":,(?: )?)(?:25[0-5]|2[0-4][0-9]|1[0-9]{2}|[1-9][0-9]|[0-9])(?:(?:(?:,(?: )?)(?:(?:0)" +
-                "?\\.(?:[0-9]){1,2}|1\\.00)))?\\))|(?P<hsla_codes>hsla\\((?:360|3[0-5][0-9]|[12][0-9]" +
+                "?\\.(?:\\d){1,2}|1\\.00)))?\\))|(?P<hsla_codes>hsla\\((?:360|3[0-5][0-9]|[12][0-9]" +
                 "{2}|[1-9][0-9]|[0-9])(?:,(?: )?)(?:100|[1-9][0-9]|[0-9])%(?:,(?: )?)(?:100|[1-9][0-9]" +
-                "|[0-9])%(?:,(?: )?)(?:(?:0)?\\.(?:[0-9]){1,2}|1\\.00)\\))|(?P<hex_codes>(?:0x|#)(?:(?" +
-                ":[0-9A-Fa-f]){6}|\\b(?:[0-9A-Fa-f]){3}\\b)))");
+                "|[0-9])%(?:,(?: )?)(?:(?:0)?\\.(?:\\d){1,2}|1\\.00)\\))|(?P<hex_codes>(?:0x|#)(?:(?" +
+                ":[A-Fa-f\\d]){6}|\\b(?:[A-Fa-f\\d]){3}\\b)))");
 
     }
 
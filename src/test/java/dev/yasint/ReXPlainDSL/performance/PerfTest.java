@@ -1,17 +1,28 @@
 package dev.yasint.ReXPlainDSL.performance;
 
 import dev.yasint.RexPlainDSL.api.Expression;
+import dev.yasint.RexPlainDSL.api.LiteralPattern;
+import dev.yasint.RexPlainDSL.api.PatternMatcher;
+import dev.yasint.RexPlainDSL.api.ShardedPattern;
+import dev.yasint.RexPlainDSL.complex.SetExpression;
+import dev.yasint.RexPlainDSL.complex.TrieExpression;
 import dev.yasint.RexPlainDSL.dsl.CharClasses;
 import dev.yasint.RexPlainDSL.dsl.Operators;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
 import java.math.BigInteger;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import static dev.yasint.RexPlainDSL.dsl.Numeric.integerRange;
 
@@ -62,6 +73,277 @@ public class PerfTest {
 
     }
 
+    @Test
+    public void perfTestDawgExpressionSynthesis() throws IOException {
+
+        final List<String> words = Files.readAllLines(Paths.get("src/test/resources/words.txt"));
+        // the same words with common endings, i.e. domain names and inflections
+        final Set<String> suffixed = new HashSet<>();
+        for (final String word : words.subList(0, 2000)) {
+            for (final String suffix : new String[]{"s", "ed", "ing", ".com", ".org"})
+                suffixed.add(word + suffix);
+        }
+
+        log();
+        for (final Set<String> list : Arrays.asList(new HashSet<>(words), suffixed)) {
+            log("Word list size: ", String.valueOf(list.size()));
+            for (final boolean shareSuffixes : new boolean[]{false, true}) {
+                long startTime = System.currentTimeMillis();
+                final String expression = Operators.eitherStrSet(list, shareSuffixes).toRegex().toString();
+                long stopTime = System.currentTimeMillis();
+                log(shareSuffixes ? "Minimal automaton" : "Trie", ", synthesized length: ", String.valueOf(expression.length()));
+                logElapsedTime(startTime, stopTime);
+                startTime = System.currentTimeMillis();
+                com.google.re2j.Pattern.compile(expression);
+                stopTime = System.currentTimeMillis();
+                log("Compiled");
+                logElapsedTime(startTime, stopTime);
+            }
+        }
+        log();
+
+    }
+
+    @Test
+    public void perfTestRepeatedTokenSynthesis() {
+
+        // separator lines of any width and zero padded ids
+        final List<String> tokens = new ArrayList<>();
+        for (int width = 1; width <= 200; width++) {
+            tokens.add(String.join("", Collections.nCopies(width, "-")));
+            tokens.add(String.join("", Collections.nCopies(width, "=")));
+        }
+        for (int id = 0; id < 1000; id++) tokens.add(String.format("%016d", id));
+
+        log();
+        log("Token count: ", String.valueOf(tokens.size()));
+        long startTime = System.currentTimeMillis();
+        final String expression = Operators.eitherStrSet(new HashSet<>(tokens)).toRegex().toString();
+        long stopTime = System.currentTimeMillis();
+        log("Synthesized length: ", String.valueOf(expression.length()));
+        logElapsedTime(startTime, stopTime);
+        startTime = System.currentTimeMillis();
+        com.google.re2j.Pattern.compile(expression);
+        stopTime = System.currentTimeMillis();
+        log("Compiled");
+        logElapsedTime(startTime, stopTime);
+        log();
+
+    }
+
+    @Test
+    public void perfTestLargeTrieInsertion() throws InterruptedException {
+
+        // 500K random lowercase terms, roughly the size of a production
+        // blocklist. Only the insertion is measured, not the rendering.
+        final Random random = new Random(42);
+        final List<String> terms = new ArrayList<>(500_000);
+        for (int i = 0; i < 500_000; i++) {
+            final StringBuilder term = new StringBuilder();
+            for (int j = 6 + random.nextInt(10); j > 0; j--)
+                term.append((char) ('a' + random.nextInt(26)));
+            terms.add(term.toString());
+        }
+
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc(); // initial invoke gc
+        Thread.sleep(1000); // sleep for 1sec
+        final long baseline = runtime.totalMemory() - runtime.freeMemory();
+
+        log();
+        log("Term count: ", String.valueOf(terms.size()));
+
+        long startTime = System.currentTimeMillis(); // record start time
+        final TrieExpression trie = new TrieExpression();
+        trie.insertAll(terms); // actual code, split into sub-tries on the common pool
+        long stopTime = System.currentTimeMillis(); // mark end time
+        runtime.gc(); // clear the memory
+        long memory = runtime.totalMemory() - runtime.freeMemory() - baseline; // used by the trie
+
+        log("Parallel insertion on ", String.valueOf(Runtime.getRuntime().availableProcessors()), " processors");
+        logElapsedTime(startTime, stopTime);
+        logUsedMemoryInMegabytes(memory);
+
+        startTime = System.currentTimeMillis();
+        final TrieExpression sequential = new TrieExpression();
+        terms.forEach(sequential::insert); // one word at a time
+        stopTime = System.currentTimeMillis();
+        log("Sequential insertion");
+        logElapsedTime(startTime, stopTime);
+
+        startTime = System.currentTimeMillis();
+        trie.toRegex(); // first-level subtrees are rendered in parallel
+        stopTime = System.currentTimeMillis();
+        log("Parallel rendering");
+        logElapsedTime(startTime, stopTime);
+        log();
+        Reference.reachabilityFence(trie); // keep the trie alive while measuring
+
+    }
+
+    @Test
+    public void perfTestShardedPatternCompilation() {
+
+        // 200K random lowercase terms, compiled as one pattern and in shards
+        final Random random = new Random(42);
+        final TrieExpression trie = new TrieExpression();
+        for (int i = 0; i < 200_000; i++) {
+            final StringBuilder term = new StringBuilder();
+            for (int j = 6 + random.nextInt(10); j > 0; j--)
+                term.append((char) ('a' + random.nextInt(26)));
+            trie.insert(term.toString());
+        }
+
+        log();
+        long startTime = System.currentTimeMillis();
+        com.google.re2j.Pattern.compile(trie.toRegex().toString());
+        long stopTime = System.currentTimeMillis();
+        log("Compiled as one pattern");
+        logElapsedTime(startTime, stopTime);
+
+        for (final boolean parallel : new boolean[]{false, true}) {
+            startTime = System.currentTimeMillis();
+            final ShardedPattern pattern = ShardedPattern.compile(trie, ShardedPattern.MAX_PROGRAM_SIZE, parallel);
+            stopTime = System.currentTimeMillis();
+            log("Compiled into ", String.valueOf(pattern.shards().size()), parallel ? " shards in parallel" : " shards");
+            logElapsedTime(startTime, stopTime);
+        }
+        log();
+
+    }
+
+    @Test
+    public void perfTestLiteralPatternMatching() {
+
+        // random lowercase terms searched for in 200KB of log lines with
+        // an Aho-Corasick automaton and with RE2 shards
+        final Random random = new Random(42);
+        for (final int size : new int[]{10_000, 100_000, 1_000_000}) {
+            final List<String> terms = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final StringBuilder term = new StringBuilder();
+                for (int j = 6 + random.nextInt(10); j > 0; j--)
+                    term.append((char) ('a' + random.nextInt(26)));
+                terms.add(term.toString());
+            }
+            final TrieExpression trie = new TrieExpression();
+            trie.insertAll(terms);
+
+            // every 4th line mentions one of the terms
+            final StringBuilder text = new StringBuilder();
+            for (int line = 0; text.length() < 200_000; line++) {
+                text.append("2024-03-0").append(1 + random.nextInt(9)).append(" INFO [worker-")
+                        .append(random.nextInt(16)).append("] request id=").append(random.nextInt(1_000_000))
+                        .append(line % 4 == 0 ? " term=" + terms.get(random.nextInt(size)) : "")
+                        .append(" status=200\n");
+            }
+
+            log();
+            long startTime = System.currentTimeMillis();
+            final PatternMatcher literal = LiteralPattern.compile(trie, false).matcher(text);
+            int literalMatches = 0;
+            while (literal.find()) literalMatches++;
+            long stopTime = System.currentTimeMillis();
+            log(String.valueOf(size), " terms, Aho-Corasick build and scan: ", String.valueOf(literalMatches), " matches");
+            logElapsedTime(startTime, stopTime);
+
+            startTime = System.currentTimeMillis();
+            final PatternMatcher sharded = ShardedPattern.compile(trie).matcher(text);
+            int shardedMatches = 0;
+            while (sharded.find()) shardedMatches++;
+            stopTime = System.currentTimeMillis();
+            log(String.valueOf(size), " terms, RE2 compile and scan: ", String.valueOf(shardedMatches), " matches");
+            logElapsedTime(startTime, stopTime);
+        }
+        log();
+
+    }
+
+    @Test
+    public void perfTestIncrementalTrieUpdate() {
+
+        // 500K random lowercase terms, then 100 updates of 20 words each
+        final Random random = new Random(42);
+        final List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 500_000; i++) {
+            final StringBuilder term = new StringBuilder();
+            for (int j = 6 + random.nextInt(10); j > 0; j--)
+                term.append((char) ('a' + random.nextInt(26)));
+            terms.add(term.toString());
+        }
+        final TrieExpression trie = new TrieExpression();
+        trie.insertAll(terms);
+        TrieExpression.Revision revision = trie.revision(null);
+
+        log();
+        long startTime = System.currentTimeMillis();
+        int changed = 0;
+        for (int update = 0; update < 100; update++) {
+            final List<String> removals = new ArrayList<>(), insertions = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                removals.add(terms.get(random.nextInt(terms.size())));
+                insertions.add(terms.get(random.nextInt(terms.size())) + "x");
+            }
+            trie.update(insertions, removals);
+            revision = trie.revision(revision);
+            if (revision.changed()) changed++;
+        }
+        long stopTime = System.currentTimeMillis();
+        log("Rendered ", String.valueOf(changed), " changed revisions after updates");
+        logElapsedTime(startTime, stopTime);
+
+        startTime = System.currentTimeMillis();
+        final TrieExpression rebuilt = new TrieExpression();
+        rebuilt.insertAll(terms);
+        rebuilt.toRegex();
+        stopTime = System.currentTimeMillis();
+        log("Rebuilt and rendered once");
+        logElapsedTime(startTime, stopTime);
+        log();
+
+    }
+
+    @Test
+    public void perfTestMappedTrie() throws IOException {
+
+        // 1M random lowercase terms, written to a file and mapped back
+        final Random random = new Random(42);
+        final List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            final StringBuilder term = new StringBuilder();
+            for (int j = 6 + random.nextInt(10); j > 0; j--)
+                term.append((char) ('a' + random.nextInt(26)));
+            terms.add(term.toString());
+        }
+        final Path file = Files.createTempFile("terms", ".trie");
+        file.toFile().deleteOnExit();
+        final TrieExpression trie = new TrieExpression();
+        trie.insertAll(terms);
+        trie.writeTo(file);
+
+        log();
+        long startTime = System.currentTimeMillis();
+        final TrieExpression mapped = TrieExpression.mapFrom(file);
+        long stopTime = System.currentTimeMillis();
+        log("Mapped ", String.valueOf(Files.size(file) >> 20), " mb");
+        logElapsedTime(startTime, stopTime);
+
+        startTime = System.currentTimeMillis();
+        int found = 0;
+        for (final String term : terms) if (mapped.contains(term)) found++;
+        stopTime = System.currentTimeMillis();
+        log("Looked up ", String.valueOf(found), " terms");
+        logElapsedTime(startTime, stopTime);
+
+        startTime = System.currentTimeMillis();
+        final int length = mapped.toRegex().length();
+        stopTime = System.currentTimeMillis();
+        log("Rendered ", String.valueOf(length), " chars");
+        logElapsedTime(startTime, stopTime);
+        log();
+
+    }
+
     @Test
     public void perfTestIntRangeExpressionSynthesis() throws InterruptedException {
 
@@ -84,6 +366,47 @@ public class PerfTest {
 
     }
 
+    @Test
+    public void perfTestLongRangeExpressionSynthesis() {
+
+        log();
+
+        long startTime = System.currentTimeMillis();
+        Expression millis = integerRange(0L, Long.MAX_VALUE); // longs
+        Expression accounts = integerRange(BigInteger.ONE, BigInteger.TEN.pow(40).subtract(BigInteger.ONE)); // big
+        final int length = millis.toRegex().length() + accounts.toRegex().length();
+        long stopTime = System.currentTimeMillis();
+
+        logElapsedTime(startTime, stopTime);
+        log("Synthesized ", String.valueOf(length), " chars");
+        log();
+
+    }
+
+    @Test
+    public void perfTestCommonIntRangeSynthesis() {
+
+        // ports, years and http status codes of a rule set, over and over
+        final int[][] ranges = {{1, 65535}, {1024, 49151}, {1900, 2099}, {2012, 2030}, {100, 599}, {200, 299}};
+        final int rules = 100_000;
+
+        log();
+        log("range count: ", String.valueOf(rules));
+
+        long startTime = System.currentTimeMillis();
+        long length = 0;
+        for (int i = 0; i < rules; i++) {
+            final int[] range = ranges[i % ranges.length];
+            length += integerRange(range[0], range[1]).toRegex().length();
+        }
+        long stopTime = System.currentTimeMillis();
+
+        log("Synthesized ", String.valueOf(length), " chars");
+        logElapsedTime(startTime, stopTime);
+        log();
+
+    }
+
     @Test
     public void perfTestSetExpressionSynthesis() throws InterruptedException {
 
@@ -110,4 +433,59 @@ public class PerfTest {
 
     }
 
+    @Test
+    public void perfTestLargeSetExpressionRendering() throws InterruptedException {
+
+        // 5,000 isolated codepoints. Half of them are astral, so every
+        // element is rendered as a hex escape instead of a range.
+        final int[] codepoints = new int[5000];
+        for (int i = 0; i < 2500; i++) {
+            codepoints[i] = 0x4E00 + i * 2;
+            codepoints[2500 + i] = 0x1F000 + i * 2;
+        }
+
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc(); // initial invoke gc
+        Thread.sleep(1000); // sleep for 1sec
+
+        log();
+        log("set element count: ", String.valueOf(codepoints.length));
+
+        final int rounds = 200;
+        String rendered = null;
+
+        // Baseline: a Formatter per hex escape and a regex per bmp element,
+        // which is how the elements were encoded before.
+        final com.google.re2j.Pattern restricted = com.google.re2j.Pattern.compile("[\\^\\]\\\\\\/\\-\"'`]");
+        long startTime = System.currentTimeMillis();
+        for (int round = 0; round < rounds; round++) {
+            final StringBuilder expression = new StringBuilder("[");
+            for (final int codepoint : codepoints) {
+                if (Character.isSupplementaryCodePoint(codepoint)) {
+                    expression.append(String.format("\\x{%s}", Integer.toHexString(codepoint)));
+                } else {
+                    final String c = Character.toString((char) codepoint);
+                    expression.append(restricted.matches(c) ? "\\" + c : c);
+                }
+            }
+            rendered = expression.append("]").toString();
+        }
+        long stopTime = System.currentTimeMillis();
+        log("Formatter and regex encoder, ", String.valueOf(rounds), " renders");
+        logElapsedTime(startTime, stopTime);
+
+        final SetExpression set = (SetExpression) CharClasses.simpleSetCp(codepoints);
+        startTime = System.currentTimeMillis();
+        for (int round = 0; round < rounds; round++) {
+            // a new instance each round, so the cached rendering isn't reused
+            rendered = set.negate().negate().toRegex().toString();
+        }
+        stopTime = System.currentTimeMillis();
+        log("Table driven encoder, ", String.valueOf(rounds), " renders");
+        logElapsedTime(startTime, stopTime);
+        log("Synthesized length: ", String.valueOf(rendered.length()));
+        log();
+
+    }
+
 }
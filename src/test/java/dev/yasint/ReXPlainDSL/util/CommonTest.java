@@ -3,6 +3,8 @@ package dev.yasint.ReXPlainDSL.util;
 import dev.yasint.RexPlainDSL.exceptions.InvalidGroupNameException;
 import org.junit.jupiter.api.Test;
 
+import static dev.yasint.RexPlainDSL.util.Common.appendSetElement;
+import static dev.yasint.RexPlainDSL.util.Common.appendSetLiteral;
 import static dev.yasint.RexPlainDSL.util.Common.asRegexGroupName;
 import static dev.yasint.RexPlainDSL.util.Common.asRegexLiteral;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -43,6 +45,17 @@ public final class CommonTest {
         );
     }
 
+    @Test
+    public void itShouldEncodeControlAndSurrogateCodepointsAsHex() {
+        assertEquals(asRegexLiteral("a\tb\u007F"), "a\\x09b\\x7F");
+        assertEquals(appendSetElement(new StringBuilder(), 0xD800).toString(), "\\x{d800}");
+        assertEquals(appendSetElement(new StringBuilder(), 0x10FFFF).toString(), "\\x{10ffff}");
+        assertEquals(appendSetElement(new StringBuilder(), '-').toString(), "\\-");
+        assertEquals(appendSetElement(new StringBuilder(), '*').toString(), "*");
+        assertEquals(appendSetLiteral(new StringBuilder(), '*').toString(), "\\*");
+        assertEquals(appendSetLiteral(new StringBuilder(), '`').toString(), "\\`");
+    }
+
     @Test
     public void itShouldThrowExceptionsForInvalidGroupNames() {
         assertThrows(